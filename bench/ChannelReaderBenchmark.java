@@ -0,0 +1,64 @@
+package bench;
+
+import network.ChannelReader;
+import network.PacketBase;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+// Разбор потока на сообщения в ChannelReader.read() поверх канала-заглушки.
+// framesPerRead - кол-во сообщений, приходящих за один вызов read;
+// splitHeader - порция данных обрывается посередине заголовка следующего сообщения
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelReaderBenchmark {
+    private static final int BODY_SIZE = 16; // размер тела сообщения
+    private static final int FRAME_SIZE = PacketBase.HEADER_SIZE + BODY_SIZE; // размер сообщения с заголовком
+    private static final int WIRE_FRAMES = 1000; // кол-во сообщений в подготовленных данных
+
+    @Param({"1", "10", "100"})
+    public int framesPerRead;
+
+    @Param({"false", "true"})
+    public boolean splitHeader;
+
+    private ChannelReader reader;
+    private final Queue<PacketBase> inputQueue = new ArrayDeque<>();
+
+    @Setup
+    public void setup() throws IOException {
+        ByteBuffer wire = ByteBuffer.allocate(FRAME_SIZE * WIRE_FRAMES);
+        for (int i = 0; i < WIRE_FRAMES; i++) {
+            wire.putInt(PacketBase.TYPE_SIZE + BODY_SIZE);
+            wire.putInt(100);
+            for (int j = 0; j < BODY_SIZE; j++)
+                wire.put((byte) ('a' + j));
+        }
+        // при splitHeader порция длиннее на половину заголовка, точка разрыва смещается с каждым чтением
+        int chunkSize = framesPerRead * FRAME_SIZE + (splitHeader ? PacketBase.HEADER_SIZE / 2 : 0);
+        StubSocketChannel channel = new StubSocketChannel(wire.array(), chunkSize);
+        reader = new ChannelReader(channel, 4 * chunkSize + FRAME_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        reader.close();
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        int count = reader.read(inputQueue);
+        PacketBase packetBase;
+        while ((packetBase = inputQueue.poll()) != null)
+            packetBase.release();
+        return count;
+    }
+}
@@ -0,0 +1,62 @@
+package bench;
+
+import network.PooledBuffer;
+import network.packets.Packet100Message;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Кодирование/декодирование UTF-8 тела Packet100Message
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Packet100MessageBenchmark {
+
+    @Param({"ascii", "cyrillic"})
+    public String text;
+
+    private static final byte[] QUIT = "quit".getBytes(StandardCharsets.US_ASCII);
+
+    private Packet100Message encoder; // сообщение для кодирования
+    private Packet100Message decoder; // сообщение для декодирования
+
+    @Setup
+    public void setup() throws Exception {
+        String message = "ascii".equals(text) ? "1qw3edr5tgy7uji9ol" : "апуцпп4меу3523меицм";
+        encoder = new Packet100Message();
+        encoder.setMessage(message);
+        decoder = new Packet100Message();
+        decoder.setPacket(Packet100Message.type, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        encoder.writePacketBody();
+        return encoder.getPacketBody();
+    }
+
+    @Benchmark
+    public int encodePooled() {
+        encoder.setMessage(encoder.getMessage());
+        PooledBuffer frame = encoder.retainFrame();
+        int size = frame.buffer().remaining();
+        frame.release();
+        encoder.release();
+        return size;
+    }
+
+    @Benchmark
+    public boolean matchQuit() {
+        return decoder.bodyEqualsIgnoreCase(QUIT);
+    }
+
+    @Benchmark
+    public String decode() {
+        decoder.readPacketBody();
+        return decoder.getMessage();
+    }
+}
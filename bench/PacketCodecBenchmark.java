@@ -0,0 +1,74 @@
+package bench;
+
+import network.PacketBase;
+import network.PooledBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Кодирование сообщения в буфер/массив и разбор сообщения из буфера PacketBase.readBuffer(int)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketCodecBenchmark {
+
+    @Param({"16", "256", "1000"})
+    public int bodySize; // размер тела сообщения
+
+    private PacketBase packet; // сообщение для кодирования
+    private PacketBase readPacket; // сообщение с буфером чтения
+    private byte[] frame; // закодированное сообщение
+    private int messageLength; // длинна сообщения (тип + тело)
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] body = new byte[bodySize];
+        for (int i = 0; i < body.length; i++)
+            body[i] = (byte) ('a' + i % 26);
+
+        packet = new PacketBase();
+        packet.setPacket(100, body);
+        frame = packet.getByteArrayMessage();
+        messageLength = packet.getPacketLength();
+        readPacket = new PacketBase(PacketBase.LENGTH_SIZE + messageLength);
+    }
+
+    @Benchmark
+    public ByteBuffer getByteBufferMessage() {
+        return packet.getByteBufferMessage();
+    }
+
+    @Benchmark
+    public byte[] getByteArrayMessage() throws IOException {
+        return packet.getByteArrayMessage();
+    }
+
+    // Кодирование в буфер пула (путь ChannelWriter)
+    @Benchmark
+    public int retainFrame() {
+        PacketBase copy = new PacketBase();
+        try {
+            copy.setPacket(100, packet.getPacketBody());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        PooledBuffer buffer = copy.retainFrame();
+        int result = buffer.buffer().remaining();
+        buffer.release();
+        copy.release();
+        return result;
+    }
+
+    @Benchmark
+    public byte[] readBuffer() throws IOException {
+        readPacket.readBuffer.clear();
+        readPacket.readBuffer.put(frame);
+        readPacket.readBuffer(messageLength);
+        return readPacket.getPacketBody();
+    }
+}
@@ -0,0 +1,39 @@
+package bench;
+
+import network.PacketBase;
+import network.PacketFactory;
+import network.packets.Packet100Message;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Создание типизированного сообщения по типу (PacketFactory) и определение типа по классу
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketFactoryBenchmark {
+    private PacketBase packet; // нетипизированное сообщение
+    private Packet100Message message; // типизированное сообщение
+
+    @Setup
+    public void setup() throws IOException {
+        packet = new PacketBase();
+        packet.setPacket(Packet100Message.type, "hello".getBytes(StandardCharsets.UTF_8));
+        message = new Packet100Message();
+    }
+
+    @Benchmark
+    public PacketBase createPacket() throws IOException {
+        return PacketFactory.createPacket(packet);
+    }
+
+    @Benchmark
+    public int getPacketType() {
+        return PacketFactory.getPacketType(message);
+    }
+}
@@ -0,0 +1,138 @@
+package bench;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Collections;
+import java.util.Set;
+
+// Канал-заглушка для бенчмарков.
+// Чтение отдаёт данные из заранее подготовленного массива порциями заданного размера (по кругу),
+// запись только считает байты
+public class StubSocketChannel extends SocketChannel {
+    private final byte[] wire; // данные "сети"
+    private final int chunkSize; // кол-во байт, отдаваемых за один вызов read
+    private int wirePosition = 0; // текущая позиция в данных
+    private long written = 0; // кол-во записанных байт
+
+    public StubSocketChannel(byte[] wire, int chunkSize) {
+        super(SelectorProvider.provider());
+        this.wire = wire;
+        this.chunkSize = chunkSize;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+        int count = Math.min(chunkSize, dst.remaining());
+        for (int i = 0; i < count; i++) {
+            dst.put(wire[wirePosition]);
+            wirePosition = (wirePosition + 1) % wire.length;
+        }
+        return count;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) {
+        long result = 0;
+        for (int i = offset; i < offset + length; i++)
+            result += read(dsts[i]);
+        return result;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        int count = src.remaining();
+        src.position(src.limit());
+        written += count;
+        return count;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+        long result = 0;
+        for (int i = offset; i < offset + length; i++)
+            result += write(srcs[i]);
+        return result;
+    }
+
+    @Override
+    public SocketChannel bind(SocketAddress local) {
+        return this;
+    }
+
+    @Override
+    public <T> SocketChannel setOption(SocketOption<T> name, T value) {
+        return this;
+    }
+
+    @Override
+    public <T> T getOption(SocketOption<T> name) {
+        return null;
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public SocketChannel shutdownInput() {
+        return this;
+    }
+
+    @Override
+    public SocketChannel shutdownOutput() {
+        return this;
+    }
+
+    @Override
+    public Socket socket() {
+        return null;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnectionPending() {
+        return false;
+    }
+
+    @Override
+    public boolean connect(SocketAddress remote) {
+        return true;
+    }
+
+    @Override
+    public boolean finishConnect() {
+        return true;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    protected void implCloseSelectableChannel() throws IOException {
+    }
+
+    @Override
+    protected void implConfigureBlocking(boolean block) throws IOException {
+    }
+}
@@ -0,0 +1,96 @@
+package server;
+
+import network.PacketLanes;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Порядок выборки задач очереди с полосами приоритета
+public class LaneQueueTest {
+    // Задача с полосой приоритета (выполнять не нужно - проверяется только порядок выборки)
+    private static final class LaneTask implements PacketLanes.Task {
+        private final int lane;
+
+        LaneTask(int lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public int getLane() {
+            return lane;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    // Выбирает все задачи и возвращает полосы в порядке выборки
+    private static List<Integer> drainLanes(LaneQueue queue) {
+        List<Integer> result = new ArrayList<>();
+        Runnable task;
+        while ((task = queue.poll()) != null)
+            result.add(((LaneTask) task).getLane());
+        return result;
+    }
+
+    // Без защиты от голодания полосы получают выборки по весам за круг обхода
+    @Test
+    public void weightedRoundRobin() {
+        LaneQueue queue = new LaneQueue();
+        queue.configure("8,4,1", 0);
+        for (int i = 0; i < 30; i++) {
+            queue.offer(new LaneTask(PacketLanes.BULK));
+            queue.offer(new LaneTask(PacketLanes.INTERACTIVE));
+            queue.offer(new LaneTask(PacketLanes.CONTROL));
+        }
+        List<Integer> lanes = drainLanes(queue).subList(0, 13);
+        int[] counts = new int[PacketLanes.LANE_COUNT];
+        for (int lane : lanes)
+            counts[lane]++;
+        assertEquals(8, counts[PacketLanes.CONTROL]);
+        assertEquals(4, counts[PacketLanes.INTERACTIVE]);
+        assertEquals(1, counts[PacketLanes.BULK]);
+    }
+
+    // Новая управляющая задача не ждёт за старым хвостом массовых задач:
+    // выборка вне очереди не чаще одного раза за круг и не вытесняет более приоритетные полосы
+    @Test
+    public void controlTaskIsNotQueuedBehindStarvedBacklog() throws InterruptedException {
+        LaneQueue queue = new LaneQueue();
+        queue.configure("8,4,1", 1);
+        for (int i = 0; i < 100; i++)
+            queue.offer(new LaneTask(PacketLanes.BULK));
+        Thread.sleep(10); // все массовые задачи старше порога голодания
+        queue.offer(new LaneTask(PacketLanes.CONTROL));
+
+        List<Integer> lanes = drainLanes(queue);
+        assertEquals(101, lanes.size());
+        int position = lanes.indexOf(PacketLanes.CONTROL);
+        assertTrue("control task dequeued at position " + position, position >= 0 && position <= 1);
+    }
+
+    // Голодающая полоса получает выборку вне очереди, пока более приоритетная полоса занята
+    @Test
+    public void starvedLaneIsPromotedOncePerRound() throws InterruptedException {
+        LaneQueue queue = new LaneQueue();
+        queue.configure("8,4,1", 1);
+        for (int i = 0; i < 20; i++)
+            queue.offer(new LaneTask(PacketLanes.BULK));
+        Thread.sleep(10);
+        for (int i = 0; i < 20; i++)
+            queue.offer(new LaneTask(PacketLanes.CONTROL));
+
+        // круг: 8 управляющих задач + 1 вне очереди (голодающая массовая) + 1 массовая по весу
+        List<Integer> lanes = drainLanes(queue).subList(0, 10);
+        int bulk = 0;
+        for (int lane : lanes)
+            if (lane == PacketLanes.BULK)
+                bulk++;
+        assertEquals(2, bulk);
+    }
+}
@@ -0,0 +1,115 @@
+package client;
+
+import java.util.Arrays;
+
+// Гистограмма задержек с логарифмически-линейными интервалами (по принципу HdrHistogram).
+// Значения меньше SUB_BUCKET_COUNT хранятся точно, большие - с относительной погрешностью не более 1/64.
+// Память фиксирована (~30 КБ), запись значения - O(1).
+// Не потокобезопасна, синхронизацию обеспечивает владелец
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7; // разрядность интервалов внутри степени двойки
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // значения, хранящиеся точно
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1; // кол-во интервалов на степень двойки
+    private static final int MAX_EXPONENT = 62 - (SUB_BUCKET_BITS - 1); // макс. сдвиг (для Long.MAX_VALUE)
+
+    private final long[] counts = new long[SUB_BUCKET_COUNT + MAX_EXPONENT * SUB_BUCKET_HALF];
+    private long totalCount = 0; // кол-во значений
+    private long totalSum = 0; // сумма значений (для среднего)
+    private long minValue = Long.MAX_VALUE; // минимальное значение
+    private long maxValue = 0; // максимальное значение
+
+    // Индекс интервала для значения
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+        int exponent = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        int mantissa = (int) (value >>> exponent); // [SUB_BUCKET_HALF, SUB_BUCKET_COUNT)
+        return SUB_BUCKET_COUNT + (exponent - 1) * SUB_BUCKET_HALF + (mantissa - SUB_BUCKET_HALF);
+    }
+
+    // Наибольшее значение, попадающее в интервал
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+        int offset = index - SUB_BUCKET_COUNT;
+        int exponent = offset / SUB_BUCKET_HALF + 1;
+        long mantissa = offset % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((mantissa + 1) << exponent) - 1;
+    }
+
+    // Записывает значение (отрицательные считаются нулём)
+    public void recordValue(long value) {
+        if (value < 0)
+            value = 0;
+        counts[indexOf(value)]++;
+        totalCount++;
+        totalSum += value;
+        if (value < minValue)
+            minValue = value;
+        if (value > maxValue)
+            maxValue = value;
+    }
+
+    // Записывает значение с коррекцией coordinated omission.
+    // Если замер длился дольше ожидаемого интервала между отправками, значит генератор нагрузки
+    // не отправил запросы, которые попали бы на время задержки. Для них добавляются
+    // значения value - interval, value - 2*interval, ... (как в HdrHistogram.recordValueWithExpectedInterval)
+    public void recordValueWithExpectedInterval(long value, long expectedInterval) {
+        recordValue(value);
+        if (expectedInterval <= 0)
+            return;
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval)
+            recordValue(missing);
+    }
+
+    // Добавляет значения другой гистограммы
+    public void add(LatencyHistogram other) {
+        if (other.totalCount == 0)
+            return;
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        totalCount += other.totalCount;
+        totalSum += other.totalSum;
+        minValue = Math.min(minValue, other.minValue);
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    // Очищает гистограмму
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalSum = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMinValue() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) totalSum / totalCount;
+    }
+
+    // Значение перцентиля (0..100). Возвращается верхняя граница интервала, но не больше максимума
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target)
+                return Math.min(highestValueAt(i), maxValue);
+        }
+        return maxValue;
+    }
+}
@@ -0,0 +1,581 @@
+package client;
+
+import network.FrameCompression;
+import network.Heartbeat;
+import network.PacketBase;
+import network.PacketBatch;
+import network.PooledBuffer;
+import network.packets.Packet100Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Генератор нагрузки.
+// Несколько потоков, у каждого свой селектор и своя часть неблокирующих соединений.
+// В тело Packet100Message записывается время отправки (System.nanoTime()), сервер возвращает сообщение
+// без изменений, по ответу считается время оборота (RTT) и записывается в гистограмму.
+// Режимы:
+//  fixed - у соединения не больше одного сообщения в пути, темп отправки rate/connections.
+//          Задержка ответа сдвигает следующие отправки, пропущенные замеры восстанавливаются
+//          коррекцией coordinated omission. При rate=0 - максимальный темп (следующее сообщение сразу по ответу)
+//  open  - отправка по расписанию независимо от ответов (open-loop), задержка считается от запланированного
+//          времени отправки, поэтому задержки сервера и самого генератора не теряются
+// Параметр batch > 1 включает пакетную отправку: сообщения, время которых подошло (fixed - сразу batch штук),
+// упаковываются в одно пакетное сообщение (PacketBatch), сервер отвечает так же пакетами.
+// Параметр compress=true согласует сжатие с сервером при подключении: сообщения больше порога
+// FrameCompression сжимаются в обе стороны (пакетные сообщения клиента отправляются несжатыми).
+// Параметры задаются в виде key=value: host, port, connections, threads, mode, rate, size, batch, compress,
+// duration, interval
+public class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class.getName());
+
+    private static final int READ_BUFFER_SIZE = 65536; // размер буфера чтения соединения
+    private static final int WRITE_BUFFER_SIZE = 262144; // размер буфера отправки соединения
+    private static final int MAX_SENDS_PER_PASS = 64; // макс. кол-во отправок соединения за проход (open)
+    private static final int MAX_BATCH_FRAME_SIZE = 1024; // макс. размер пакетного сообщения (network.packet.maxsize сервера)
+
+    private String host = "localhost";
+    private int port = 8000;
+    private int connections = 100; // кол-во соединений
+    private int threads = 2; // кол-во потоков ввода/вывода
+    private boolean openLoop = false; // режим open-loop
+    private long rate = 10000; // суммарный темп отправки (сообщений/с, 0 - без ограничения)
+    private int messageSize = 64; // размер сообщения с заголовком
+    private int batch = 1; // макс. кол-во сообщений в пакетном сообщении (1 - без упаковки)
+    private boolean compress = false; // согласовать сжатие сообщений
+    private int duration = 30; // длительность теста (с)
+    private int interval = 1; // интервал вывода статистики (с)
+
+    private volatile boolean running = false; // признак работы потоков
+    private final List<Worker> workers = new ArrayList<>();
+
+    public static void main(String[] args) {
+        try {
+            new LoadGenerator(args).run();
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Usage: load [host=localhost] [port=8000] [connections=100] [threads=2] " +
+                    "[mode=fixed|open] [rate=10000] [size=64] [batch=1] [compress=false] " +
+                    "[duration=30] [interval=1]");
+        } catch (IOException e) {
+            logger.error("Unable to connect to server: ", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public LoadGenerator(String[] args) {
+        for (String arg : args) {
+            int pos = arg.indexOf('=');
+            if (pos <= 0)
+                throw new IllegalArgumentException("Wrong parameter: " + arg);
+            String key = arg.substring(0, pos);
+            String value = arg.substring(pos + 1);
+            try {
+                switch (key) {
+                    case "host": host = value; break;
+                    case "port": port = Integer.parseInt(value); break;
+                    case "connections": connections = Integer.parseInt(value); break;
+                    case "threads": threads = Integer.parseInt(value); break;
+                    case "mode": openLoop = parseMode(value); break;
+                    case "rate": rate = Long.parseLong(value); break;
+                    case "size": messageSize = Integer.parseInt(value); break;
+                    case "batch": batch = Integer.parseInt(value); break;
+                    case "compress": compress = Boolean.parseBoolean(value); break;
+                    case "duration": duration = Integer.parseInt(value); break;
+                    case "interval": interval = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("Unknown parameter: " + key);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Wrong value: " + arg);
+            }
+        }
+        if (connections <= 0 || threads <= 0 || duration <= 0 || interval <= 0 || batch <= 0 || rate < 0)
+            throw new IllegalArgumentException("connections, threads, duration, interval, batch must be > 0, rate >= 0");
+        if (openLoop && rate == 0)
+            throw new IllegalArgumentException("open mode requires rate > 0");
+        // в теле должно поместиться время отправки (знак, до 19 цифр и пробел)
+        messageSize = Math.max(messageSize, PacketBase.HEADER_SIZE + 21);
+        if (batch > 1 && PacketBase.HEADER_SIZE + batch * messageSize > MAX_BATCH_FRAME_SIZE)
+            throw new IllegalArgumentException("batch * size must not exceed " +
+                    (MAX_BATCH_FRAME_SIZE - PacketBase.HEADER_SIZE) + " bytes");
+        threads = Math.min(threads, connections);
+    }
+
+    private static boolean parseMode(String value) {
+        if ("open".equals(value))
+            return true;
+        if ("fixed".equals(value))
+            return false;
+        throw new IllegalArgumentException("Unknown mode: " + value);
+    }
+
+    // Запускает тест и выводит статистику
+    public void run() throws IOException, InterruptedException {
+        // интервал между отправками одного соединения (0 - без ограничения).
+        // В режиме fixed за одну отправку уходит batch сообщений
+        long sendInterval = rate > 0 ? 1_000_000_000L * connections / rate : 0;
+        if (!openLoop)
+            sendInterval *= batch;
+
+        System.out.println("Load generator: " + connections + " connections, " + threads + " threads, mode=" +
+                (openLoop ? "open" : "fixed") + ", rate=" + (rate > 0 ? rate + " msg/s" : "max") +
+                ", size=" + messageSize + " bytes, batch=" + batch + ", compress=" + compress + ", duration=" + duration + " s");
+
+        for (int i = 0; i < threads; i++)
+            workers.add(new Worker(i, sendInterval));
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        for (int i = 0; i < connections; i++)
+            workers.get(i % threads).connect(address);
+
+        running = true;
+        List<Thread> workerThreads = new ArrayList<>();
+        for (Worker worker : workers) {
+            Thread thread = new Thread(worker, "LoadWorker-" + worker.workerId);
+            thread.start();
+            workerThreads.add(thread);
+        }
+
+        LatencyHistogram intervalHistogram = new LatencyHistogram();
+        LatencyHistogram totalHistogram = new LatencyHistogram();
+        LatencyHistogram totalRawHistogram = new LatencyHistogram();
+        long totalSent = 0;
+        long totalReceived = 0;
+        long startTime = System.nanoTime();
+        long nextReport = startTime;
+        long endTime = startTime + duration * 1_000_000_000L;
+
+        System.out.printf("%8s %10s %10s %10s %10s %10s %10s %10s%n",
+                "time(s)", "sent/s", "recv/s", "p50(us)", "p99(us)", "p99.9(us)", "max(us)", "errors");
+        while (nextReport < endTime) {
+            long lastReport = nextReport;
+            nextReport = Math.min(nextReport + interval * 1_000_000_000L, endTime);
+            long sleep = nextReport - System.nanoTime();
+            if (sleep > 0)
+                Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+
+            long sent = 0;
+            long received = 0;
+            long errors = 0;
+            intervalHistogram.reset();
+            for (Worker worker : workers) {
+                synchronized (worker) {
+                    sent += worker.sent;
+                    received += worker.received;
+                    errors += worker.errors;
+                    worker.sent = 0;
+                    worker.received = 0;
+                    intervalHistogram.add(worker.histogram);
+                    totalRawHistogram.add(worker.rawHistogram);
+                    worker.histogram.reset();
+                    worker.rawHistogram.reset();
+                }
+            }
+            totalHistogram.add(intervalHistogram);
+            totalSent += sent;
+            totalReceived += received;
+
+            double seconds = (nextReport - lastReport) / 1e9;
+            System.out.printf("%8.1f %10.0f %10.0f %10d %10d %10d %10d %10d%n",
+                    (nextReport - startTime) / 1e9, sent / seconds, received / seconds,
+                    intervalHistogram.getValueAtPercentile(50), intervalHistogram.getValueAtPercentile(99),
+                    intervalHistogram.getValueAtPercentile(99.9), intervalHistogram.getMaxValue(), errors);
+        }
+
+        running = false;
+        for (Worker worker : workers)
+            worker.selector.wakeup();
+        for (Thread thread : workerThreads)
+            thread.join();
+
+        double seconds = duration;
+        System.out.println("Total: sent=" + totalSent + " received=" + totalReceived +
+                String.format(" throughput=%.0f msg/s", totalReceived / seconds));
+        printSummary(openLoop || sendInterval == 0 ? "Latency" : "Latency (corrected)", totalHistogram);
+        if (!openLoop && sendInterval > 0)
+            printSummary("Latency (uncorrected)", totalRawHistogram);
+    }
+
+    private static void printSummary(String title, LatencyHistogram histogram) {
+        System.out.printf("%s, us: count=%d min=%d mean=%.1f p50=%d p90=%d p99=%d p99.9=%d p99.99=%d max=%d%n",
+                title, histogram.getTotalCount(), histogram.getMinValue(), histogram.getMean(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+                histogram.getValueAtPercentile(99.99), histogram.getMaxValue());
+    }
+
+    // Поток ввода/вывода: обслуживает свою часть соединений через селектор
+    private class Worker implements Runnable {
+        private final int workerId;
+        private final long sendInterval; // интервал между отправками одного соединения (нс)
+        private final Selector selector;
+        private final List<Connection> connections = new ArrayList<>();
+
+        // статистика интервала (защищена монитором Worker)
+        private final LatencyHistogram histogram = new LatencyHistogram(); // с коррекцией coordinated omission
+        private final LatencyHistogram rawHistogram = new LatencyHistogram(); // без коррекции
+        private long sent = 0;
+        private long received = 0;
+        private long errors = 0;
+
+        Worker(int workerId, long sendInterval) throws IOException {
+            this.workerId = workerId;
+            this.sendInterval = sendInterval;
+            this.selector = Selector.open();
+        }
+
+        // Открывает соединение и регистрирует его в селекторе (до запуска потока)
+        void connect(InetSocketAddress address) throws IOException {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            if (compress)
+                connection.compressing = negotiateCompression(channel);
+            channel.configureBlocking(false);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+        }
+
+        // Запрашивает сжатие у сервера (блокирующий обмен до начала теста).
+        // Возвращает true, если сервер согласился
+        private boolean negotiateCompression(SocketChannel channel) throws IOException {
+            PooledBuffer request = FrameCompression.newControlPacket(FrameCompression.CODEC_DEFLATE).retainFrame();
+            try {
+                while (request.buffer().hasRemaining())
+                    channel.write(request.buffer());
+            } finally {
+                request.release();
+            }
+            ByteBuffer reply = ByteBuffer.allocate(PacketBase.HEADER_SIZE + 4);
+            while (reply.hasRemaining()) {
+                if (channel.read(reply) == -1)
+                    throw new IOException("Connection closed during compression negotiation");
+            }
+            if (reply.getInt(PacketBase.LENGTH_SIZE) != FrameCompression.CONTROL_TYPE)
+                throw new IOException("Unexpected reply to compression negotiation");
+            return FrameCompression.readControlCodec(reply, 0, reply.capacity()) == FrameCompression.CODEC_DEFLATE;
+        }
+
+        @Override
+        public void run() {
+            // разносим первые отправки соединений по интервалу, чтобы не было залпа в начале
+            long now = System.nanoTime();
+            for (int i = 0; i < connections.size(); i++)
+                connections.get(i).nextSendTime = now + sendInterval * i / connections.size();
+
+            try {
+                while (running) {
+                    now = System.nanoTime();
+                    long nextDeadline = Long.MAX_VALUE;
+                    for (Connection connection : connections) {
+                        if (!connection.channel.isOpen())
+                            continue;
+                        sendDue(connection, now);
+                        // ждём времени отправки, если есть место в буфере (open) или нет сообщения в пути (fixed)
+                        if (openLoop ? connection.writeBuffer.remaining() >= sendSize() : connection.inFlight == 0)
+                            nextDeadline = Math.min(nextDeadline, connection.nextSendTime);
+                    }
+
+                    long timeout = nextDeadline - System.nanoTime();
+                    if (nextDeadline == Long.MAX_VALUE)
+                        selector.select();
+                    else if (timeout <= 0)
+                        selector.selectNow();
+                    else
+                        selector.select((timeout + 999_999) / 1_000_000);
+
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isValid() && key.isReadable())
+                            readReplies(connection);
+                        if (key.isValid() && key.isWritable())
+                            flush(connection);
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Exception: ", e);
+            } finally {
+                for (Connection connection : connections)
+                    connection.close();
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    logger.error("Exception: ", e);
+                }
+            }
+        }
+
+        // Отправляет сообщения, время которых подошло
+        private void sendDue(Connection connection, long now) {
+            int sends = 0;
+            if (openLoop) {
+                // отправляем все пропущенные по расписанию сообщения, время отправки - запланированное.
+                // Сообщения, время которых подошло, упаковываются по batch штук
+                while (connection.nextSendTime <= now && sends < MAX_SENDS_PER_PASS
+                        && connection.writeBuffer.remaining() >= sendSize()) {
+                    connection.beginBatch();
+                    int packed = 0;
+                    do {
+                        connection.enqueue(connection.nextSendTime);
+                        connection.nextSendTime += sendInterval;
+                        packed++;
+                    } while (packed < batch && connection.nextSendTime <= now);
+                    connection.endBatch();
+                    sends += packed;
+                }
+            } else if (connection.inFlight == 0 && connection.nextSendTime <= now
+                    && connection.writeBuffer.remaining() >= sendSize()) {
+                connection.beginBatch();
+                for (int i = 0; i < batch; i++)
+                    connection.enqueue(now);
+                connection.endBatch();
+                connection.inFlight = batch;
+                connection.nextSendTime = now + sendInterval;
+                sends += batch;
+            }
+            if (sends > 0) {
+                synchronized (this) {
+                    sent += sends;
+                }
+                flush(connection);
+            }
+        }
+
+        // Отправляет накопленные в буфере данные
+        private void flush(Connection connection) {
+            try {
+                connection.writeBuffer.flip();
+                connection.channel.write(connection.writeBuffer);
+                boolean pending = connection.writeBuffer.hasRemaining();
+                connection.writeBuffer.compact();
+                connection.key.interestOps(pending ?
+                        SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            } catch (IOException e) {
+                fail(connection, e);
+            }
+        }
+
+        // Читает ответы и записывает время оборота в гистограммы
+        private void readReplies(Connection connection) {
+            ByteBuffer buffer = connection.readBuffer;
+            int read;
+            try {
+                read = connection.channel.read(buffer);
+            } catch (IOException e) {
+                fail(connection, e);
+                return;
+            }
+            if (read == -1) {
+                fail(connection, null);
+                return;
+            }
+
+            long now = System.nanoTime();
+            int replies = 0;
+            boolean pong = false; // в буфер отправки добавлен ответ на ping
+            buffer.flip();
+            while (buffer.remaining() >= PacketBase.LENGTH_SIZE) {
+                int position = buffer.position();
+                int packetLength = buffer.getInt(position);
+                if (packetLength < PacketBase.TYPE_SIZE || packetLength > READ_BUFFER_SIZE - PacketBase.LENGTH_SIZE) {
+                    buffer.clear();
+                    fail(connection, new IOException("Wrong packet size: " + packetLength));
+                    return;
+                }
+                if (buffer.remaining() < PacketBase.LENGTH_SIZE + packetLength)
+                    break; // сообщение пришло не полностью
+
+                int end = position + PacketBase.LENGTH_SIZE + packetLength;
+                if (buffer.getInt(position + PacketBase.LENGTH_SIZE) == Heartbeat.PING_TYPE) {
+                    // проверка связи от сервера: отвечаем pong с тем же телом
+                    pong |= connection.enqueuePong(buffer, position, end);
+                    buffer.position(end);
+                    continue;
+                }
+                try {
+                    replies += processReply(buffer, position, end, now);
+                } catch (IOException e) {
+                    buffer.clear();
+                    fail(connection, e);
+                    return;
+                }
+                buffer.position(end);
+            }
+            buffer.compact();
+            if (pong)
+                flush(connection);
+
+            if (replies > 0) {
+                synchronized (this) {
+                    received += replies;
+                }
+                connection.inFlight = Math.max(connection.inFlight - replies, 0);
+                if (!openLoop)
+                    sendDue(connection, now);
+            }
+        }
+
+        // Обрабатывает ответ [position, end) буфера (сжатый, пакетный или одиночный).
+        // Возвращает кол-во ответов на отправленные сообщения
+        private int processReply(ByteBuffer buffer, int position, int end, long now) throws IOException {
+            int packetType = buffer.getInt(position + PacketBase.LENGTH_SIZE);
+            if (packetType == FrameCompression.CONTROL_TYPE)
+                return 0; // ответ на согласование сжатия
+            if (FrameCompression.isCompressed(packetType)) {
+                PooledBuffer frame = FrameCompression.decompress(buffer, position, end - position,
+                        READ_BUFFER_SIZE - PacketBase.HEADER_SIZE);
+                try {
+                    ByteBuffer plain = frame.buffer();
+                    return processReply(plain, plain.position(), plain.limit(), now);
+                } finally {
+                    frame.release();
+                }
+            }
+            if (packetType != PacketBatch.TYPE) {
+                recordReply(buffer, position + PacketBase.HEADER_SIZE, end, now);
+                return 1;
+            }
+            // пакетное сообщение: ответ на каждое вложенное сообщение
+            int replies = 0;
+            int cursor = position + PacketBase.HEADER_SIZE;
+            while (end - cursor >= PacketBase.HEADER_SIZE) {
+                int subEnd = cursor + PacketBase.LENGTH_SIZE + buffer.getInt(cursor);
+                if (subEnd > end || subEnd < cursor + PacketBase.HEADER_SIZE)
+                    break;
+                recordReply(buffer, cursor + PacketBase.HEADER_SIZE, subEnd, now);
+                cursor = subEnd;
+                replies++;
+            }
+            return replies;
+        }
+
+        // Записывает время оборота ответа, тело которого занимает [from, to) буфера
+        private void recordReply(ByteBuffer buffer, int from, int to, long now) {
+            long latency = (now - parseTimestamp(buffer, from, to)) / 1000;
+            synchronized (this) {
+                rawHistogram.recordValue(latency);
+                if (openLoop)
+                    histogram.recordValue(latency);
+                else
+                    histogram.recordValueWithExpectedInterval(latency, sendInterval / 1000);
+            }
+        }
+
+        private void fail(Connection connection, IOException e) {
+            if (e != null)
+                logger.debug("Connection error: ", e);
+            synchronized (this) {
+                errors++;
+            }
+            connection.close();
+        }
+    }
+
+    // Макс. кол-во байт одной отправки (пакетное сообщение из batch сообщений)
+    private int sendSize() {
+        return batch > 1 ? PacketBase.HEADER_SIZE + batch * messageSize : messageSize;
+    }
+
+    // Разбирает время отправки (десятичное число в начале тела сообщения).
+    // System.nanoTime() может быть отрицательным (начало отсчёта произвольное), поэтому учитывается знак.
+    // Используется также TopicClient (время публикации в данных сообщения)
+    static long parseTimestamp(ByteBuffer buffer, int from, int to) {
+        boolean negative = from < to && buffer.get(from) == '-';
+        if (negative)
+            from++;
+        long result = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9')
+                break;
+            result = result * 10 + (b - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    // Соединение генератора нагрузки
+    private class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE); // принятые данные
+        private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE); // данные для отправки
+        private final Packet100Message message = new Packet100Message(); // сообщение для кодирования
+        private final StringBuilder body = new StringBuilder(); // тело сообщения
+        private long nextSendTime = 0; // время следующей отправки
+        private int inFlight = 0; // кол-во сообщений без ответа (fixed)
+        private int batchStart = -1; // позиция заголовка собираемого пакетного сообщения в буфере отправки
+        private boolean compressing = false; // сжатие согласовано с сервером
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        // Кодирует сообщение со временем отправки и кладёт его в буфер отправки
+        void enqueue(long sendTime) {
+            body.setLength(0);
+            body.append(sendTime).append(' ');
+            while (body.length() < messageSize - PacketBase.HEADER_SIZE)
+                body.append('x');
+            message.setMessage(body.toString());
+            PooledBuffer frame = message.retainFrame(); // кодируем прямо в буфер пула
+            if (compressing && batchStart < 0) {
+                PooledBuffer compressed = FrameCompression.compress(frame);
+                if (compressed != null) {
+                    frame.release();
+                    frame = compressed;
+                }
+            }
+            writeBuffer.put(frame.buffer());
+            frame.release();
+            message.release();
+        }
+
+        // Кладёт в буфер отправки pong на ping [position, end) буфера. Возвращает false, если места нет
+        boolean enqueuePong(ByteBuffer buffer, int position, int end) {
+            if (end - position != PacketBase.HEADER_SIZE + Heartbeat.BODY_SIZE || writeBuffer.remaining() < end - position)
+                return false;
+            writeBuffer.putInt(PacketBase.TYPE_SIZE + Heartbeat.BODY_SIZE);
+            writeBuffer.putInt(Heartbeat.PONG_TYPE);
+            writeBuffer.putLong(buffer.getLong(position + PacketBase.HEADER_SIZE));
+            return true;
+        }
+
+        // Начинает пакетное сообщение в буфере отправки (batch > 1): место под заголовок
+        void beginBatch() {
+            if (batch > 1) {
+                batchStart = writeBuffer.position();
+                writeBuffer.position(batchStart + PacketBase.HEADER_SIZE);
+            }
+        }
+
+        // Завершает пакетное сообщение: записывает длину и тип в заголовок
+        void endBatch() {
+            if (batchStart >= 0) {
+                writeBuffer.putInt(batchStart, writeBuffer.position() - batchStart - PacketBase.LENGTH_SIZE);
+                writeBuffer.putInt(batchStart + PacketBase.LENGTH_SIZE, PacketBatch.TYPE);
+                batchStart = -1;
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Exception: ", e);
+            }
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package client;
 
+import network.Heartbeat;
 import network.PacketBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 // Клиент
@@ -47,6 +50,22 @@ public class NioClient implements Runnable {
     }
 
     public static void main(String[] args) {
+        // режим генератора нагрузки: load [key=value ...]
+        if (args.length > 0 && "load".equals(args[0])) {
+            LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // передача сообщений произвольного размера: stream send|get [key=value ...]
+        if (args.length > 0 && "stream".equals(args[0])) {
+            StreamClient.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // подписка на темы: topic sub|pub|fanout [key=value ...]
+        if (args.length > 0 && "topic".equals(args[0])) {
+            TopicClient.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         try {
             /*NioClient client = new NioClient("localhost", 8000);
             client.work();
@@ -104,8 +123,10 @@ public class NioClient implements Runnable {
                 PacketBase packetBase = new PacketBase(this.MESSAGE_SIZE);
                 packetBase.setPacket(0, messageBody);
 
-                this.dos.write(packetBase.getByteArrayMessage());
-                this.dos.flush();
+                synchronized (this.dos) { // поток приёма тоже пишет (ответы на ping)
+                    this.dos.write(packetBase.getByteArrayMessage());
+                    this.dos.flush();
+                }
 
                 System.out.println(Thread.currentThread().getName() + " [" + i + "] send: " + packetBase);
             } catch (IOException e) {
@@ -150,8 +171,10 @@ public class NioClient implements Runnable {
                 PacketBase packetBase = new PacketBase(this.MESSAGE_SIZE);
                 packetBase.setPacket(0, messageBody);
 
-                this.dos.write(packetBase.getByteArrayMessage());
-                this.dos.flush();
+                synchronized (this.dos) { // поток приёма тоже пишет (ответы на ping)
+                    this.dos.write(packetBase.getByteArrayMessage());
+                    this.dos.flush();
+                }
 
                 System.out.println("[" + counter++ + "] PacketBase was send: " + packetBase);
 
@@ -169,6 +192,17 @@ public class NioClient implements Runnable {
         System.out.println("Client is closed");
     }
 
+    // Отвечает на ping сервера: pong с тем же временем отправки
+    private void sendPong(byte[] body) throws IOException {
+        if (body == null || body.length < Heartbeat.BODY_SIZE)
+            return;
+        PacketBase pong = Heartbeat.newPacket(Heartbeat.PONG_TYPE, ByteBuffer.wrap(body).getLong());
+        synchronized (this.dos) {
+            this.dos.write(pong.getByteArrayMessage());
+            this.dos.flush();
+        }
+    }
+
     // Класс обработки входящих сообщений
     private class Receiver implements Runnable {
         @Override
@@ -227,7 +261,10 @@ public class NioClient implements Runnable {
                         // Проеряем пришло ли сообщение полностью
                         if (messageLength <= (position - PacketBase.LENGTH_SIZE)) {
                             packetBase.readBuffer(messageLength); // читаем сообщение в PacketBase
-                            System.out.println(Thread.currentThread().getName() + " [" + 0 + "] receive: " + packetBase);
+                            if (packetBase.getPacketType() == Heartbeat.PING_TYPE)
+                                sendPong(packetBase.getPacketBody()); // проверка связи от сервера
+                            else
+                                System.out.println(Thread.currentThread().getName() + " [" + 0 + "] receive: " + packetBase);
 
                             // Определяем сколько ещё байтов в буфере
                             hasBytes = (position - PacketBase.LENGTH_SIZE) - messageLength;
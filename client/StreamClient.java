@@ -0,0 +1,209 @@
+package client;
+
+import network.Heartbeat;
+import network.PacketBase;
+import network.PooledBuffer;
+import network.packets.Packet100Message;
+import network.packets.PacketChunk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Передача сообщений произвольного размера (потоком PacketChunk).
+//  send file=<путь> - отправляет файл на сервер частями и выводит ответ сервера (размер и CRC32)
+//  get name=<имя> out=<путь> - запрашивает файл у сервера (команда get) и записывает части в файл
+// Параметры задаются в виде key=value: host, port, file, name, out, chunk
+public class StreamClient {
+    private static final Logger logger = LoggerFactory.getLogger(StreamClient.class.getName());
+
+    private static final int READ_BUFFER_SIZE = 65536; // размер буфера чтения
+
+    private String host = "localhost";
+    private int port = 8000;
+    private String file = null; // отправляемый файл (send)
+    private String name = null; // имя файла на сервере (get)
+    private String out = null; // файл для записи (get)
+    private int chunkSize = 1024; // размер части с заголовком (не больше network.packet.maxsize сервера)
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    public static void main(String[] args) {
+        if (args.length == 0 || !("send".equals(args[0]) || "get".equals(args[0]))) {
+            printUsage();
+            return;
+        }
+        try {
+            StreamClient client = new StreamClient(args);
+            long start = System.nanoTime();
+            long bytes = "send".equals(args[0]) ? client.send() : client.get();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d bytes in %.3f s (%.1f MB/s)%n", bytes, seconds, bytes / seconds / 1e6);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            printUsage();
+        } catch (IOException e) {
+            logger.error("Stream error: ", e);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: stream send file=<path> [host=localhost] [port=8000] [chunk=1024]");
+        System.out.println("       stream get name=<name> out=<path> [host=localhost] [port=8000]");
+    }
+
+    public StreamClient(String[] args) {
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            int pos = arg.indexOf('=');
+            if (pos <= 0)
+                throw new IllegalArgumentException("Wrong parameter: " + arg);
+            String key = arg.substring(0, pos);
+            String value = arg.substring(pos + 1);
+            try {
+                switch (key) {
+                    case "host": host = value; break;
+                    case "port": port = Integer.parseInt(value); break;
+                    case "file": file = value; break;
+                    case "name": name = value; break;
+                    case "out": out = value; break;
+                    case "chunk": chunkSize = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("Unknown parameter: " + key);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Wrong value: " + arg);
+            }
+        }
+        if (chunkSize <= PacketChunk.FRAME_HEADER_SIZE)
+            throw new IllegalArgumentException("chunk must be > " + PacketChunk.FRAME_HEADER_SIZE);
+        if ("send".equals(args[0]) && file == null)
+            throw new IllegalArgumentException("send requires file=<path>");
+        if ("get".equals(args[0]) && (name == null || out == null))
+            throw new IllegalArgumentException("get requires name=<name> and out=<path>");
+    }
+
+    // Отправляет файл потоком частей и ждёт ответа сервера. Возвращает кол-во отправленных байт файла
+    public long send() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+             FileChannel source = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+            int dataSize = chunkSize - PacketChunk.FRAME_HEADER_SIZE;
+            long size = source.size();
+            long sent = 0;
+            boolean first = true;
+            do {
+                // данные части читаются сразу после места под заголовок
+                chunk.clear();
+                chunk.position(PacketChunk.FRAME_HEADER_SIZE);
+                chunk.limit(PacketChunk.FRAME_HEADER_SIZE + (int) Math.min(dataSize, size - sent));
+                while (chunk.hasRemaining()) {
+                    if (source.read(chunk) == -1)
+                        throw new IOException("File was truncated during transfer");
+                }
+                int length = chunk.position() - PacketChunk.FRAME_HEADER_SIZE;
+                sent += length;
+                int flags = (first ? PacketChunk.FIRST : 0) | (sent == size ? PacketChunk.LAST : 0);
+                chunk.flip();
+                PacketChunk.writeHeader(chunk.duplicate(), length, 1, 0, flags);
+                writeFully(channel, chunk);
+                first = false;
+            } while (sent < size);
+
+            // ответ сервера: размер и контрольная сумма
+            System.out.println("Server: " + readText(channel));
+            return sent;
+        }
+    }
+
+    // Запрашивает файл и записывает принятые части. Возвращает кол-во принятых байт файла
+    public long get() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+             FileChannel target = FileChannel.open(Paths.get(out), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Packet100Message request = new Packet100Message("get " + name);
+            PooledBuffer frame = request.retainFrame();
+            try {
+                writeFully(channel, frame.buffer());
+            } finally {
+                frame.release();
+                request.release();
+            }
+
+            long received = 0;
+            while (true) {
+                ByteBuffer message = readFrame(channel);
+                int type = message.getInt(PacketBase.LENGTH_SIZE);
+                if (type != PacketChunk.type) {
+                    // текстовый ответ - ошибка (файл не найден)
+                    message.position(PacketBase.HEADER_SIZE);
+                    throw new IOException(StandardCharsets.UTF_8.decode(message).toString());
+                }
+                int flags = message.getInt(PacketBase.HEADER_SIZE + 8);
+                message.position(PacketChunk.FRAME_HEADER_SIZE);
+                received += message.remaining();
+                while (message.hasRemaining())
+                    target.write(message);
+                if ((flags & PacketChunk.ABORT) != 0)
+                    throw new IOException("Transfer aborted by server");
+                if ((flags & PacketChunk.LAST) != 0)
+                    return received;
+            }
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    // Читает текстовое сообщение
+    private String readText(SocketChannel channel) throws IOException {
+        ByteBuffer message = readFrame(channel);
+        message.position(PacketBase.HEADER_SIZE);
+        return StandardCharsets.UTF_8.decode(message).toString();
+    }
+
+    // Читает следующее сообщение. Возвращает копию сообщения целиком (позиция - начало заголовка).
+    // На ping сервера сразу отвечает pong и читает дальше
+    private ByteBuffer readFrame(SocketChannel channel) throws IOException {
+        while (true) {
+            ByteBuffer message = nextFrame(channel);
+            if (message.getInt(PacketBase.LENGTH_SIZE) != Heartbeat.PING_TYPE)
+                return message;
+            message.putInt(PacketBase.LENGTH_SIZE, Heartbeat.PONG_TYPE); // pong - то же сообщение с другим типом
+            writeFully(channel, message);
+        }
+    }
+
+    private ByteBuffer nextFrame(SocketChannel channel) throws IOException {
+        while (true) {
+            readBuffer.flip();
+            if (readBuffer.remaining() >= PacketBase.LENGTH_SIZE) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < PacketBase.TYPE_SIZE || length > READ_BUFFER_SIZE - PacketBase.LENGTH_SIZE)
+                    throw new IOException("Wrong packet size: " + length);
+                if (readBuffer.remaining() >= PacketBase.LENGTH_SIZE + length) {
+                    // сообщение копируется: после compact() данные в буфере сдвигаются
+                    ByteBuffer message = ByteBuffer.allocate(PacketBase.LENGTH_SIZE + length);
+                    ByteBuffer source = readBuffer.slice();
+                    source.limit(message.capacity());
+                    message.put(source);
+                    message.flip();
+                    readBuffer.position(readBuffer.position() + message.capacity());
+                    readBuffer.compact();
+                    return message;
+                }
+            }
+            readBuffer.compact();
+            if (channel.read(readBuffer) == -1)
+                throw new IOException("Connection closed by server");
+        }
+    }
+}
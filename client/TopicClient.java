@@ -0,0 +1,290 @@
+package client;
+
+import network.Heartbeat;
+import network.PacketBase;
+import network.PooledBuffer;
+import network.packets.PacketTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Клиент pub/sub.
+//  sub topic=<тема> - подписывается и выводит сообщения темы
+//  pub topic=<тема> message=<текст> - публикует сообщение
+//  fanout - тест рассылки: subscribers подписчиков на одной теме, один издатель публикует messages
+//           сообщений с темпом rate (0 - без ограничения). Выводит кол-во доставок и задержку
+//           публикация -> получение каждым подписчиком
+// Параметры задаются в виде key=value: host, port, topic, message, subscribers, messages, size, rate
+public class TopicClient {
+    private static final Logger logger = LoggerFactory.getLogger(TopicClient.class.getName());
+
+    private static final int READ_BUFFER_SIZE = 65536; // размер буфера чтения подписчика
+    private static final long SUBSCRIBE_DELAY = 500; // пауза после подписки перед публикацией (мс)
+
+    private String host = "localhost";
+    private int port = 8000;
+    private String topic = "bench";
+    private String message = null;
+    private int subscribers = 100; // кол-во подписчиков (fanout)
+    private int messages = 1000; // кол-во публикаций (fanout)
+    private int size = 64; // размер данных публикации (fanout)
+    private long rate = 1000; // публикаций в секунду (fanout, 0 - без ограничения)
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            printUsage();
+            return;
+        }
+        try {
+            TopicClient client = new TopicClient(args);
+            switch (args[0]) {
+                case "sub": client.subscribe(); break;
+                case "pub": client.publish(); break;
+                case "fanout": client.fanOut(); break;
+                default: printUsage();
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            printUsage();
+        } catch (IOException e) {
+            logger.error("Topic client error: ", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: topic sub topic=<name> [host=localhost] [port=8000]");
+        System.out.println("       topic pub topic=<name> message=<text> [host=localhost] [port=8000]");
+        System.out.println("       topic fanout [topic=bench] [subscribers=100] [messages=1000] [size=64] [rate=1000]");
+    }
+
+    public TopicClient(String[] args) {
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            int pos = arg.indexOf('=');
+            if (pos <= 0)
+                throw new IllegalArgumentException("Wrong parameter: " + arg);
+            String key = arg.substring(0, pos);
+            String value = arg.substring(pos + 1);
+            try {
+                switch (key) {
+                    case "host": host = value; break;
+                    case "port": port = Integer.parseInt(value); break;
+                    case "topic": topic = value; break;
+                    case "message": message = value; break;
+                    case "subscribers": subscribers = Integer.parseInt(value); break;
+                    case "messages": messages = Integer.parseInt(value); break;
+                    case "size": size = Integer.parseInt(value); break;
+                    case "rate": rate = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown parameter: " + key);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Wrong value: " + arg);
+            }
+        }
+        if (subscribers <= 0 || messages <= 0 || rate < 0)
+            throw new IllegalArgumentException("subscribers, messages must be > 0, rate >= 0");
+        // в данных должно поместиться время публикации (знак, до 19 цифр и пробел)
+        size = Math.max(size, 21);
+        if ("pub".equals(args[0]) && message == null)
+            throw new IllegalArgumentException("pub requires message=<text>");
+    }
+
+    // Подписывается на тему и выводит сообщения до закрытия подключения
+    public void subscribe() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port))) {
+            send(channel, PacketTopic.SUBSCRIBE, null);
+            System.out.println("Subscribed to " + topic);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                int position;
+                while ((position = nextFrame(buffer)) >= 0) {
+                    int end = position + PacketBase.LENGTH_SIZE + buffer.getInt(position);
+                    if (buffer.getInt(position + PacketBase.LENGTH_SIZE) == Heartbeat.PING_TYPE) {
+                        // проверка связи от сервера: pong - то же сообщение с другим типом
+                        ByteBuffer ping = buffer.duplicate();
+                        ping.limit(end);
+                        ByteBuffer pong = ByteBuffer.allocate(end - position);
+                        pong.put(ping);
+                        pong.putInt(PacketBase.LENGTH_SIZE, Heartbeat.PONG_TYPE);
+                        pong.flip();
+                        while (pong.hasRemaining())
+                            channel.write(pong);
+                    }
+                    ByteBuffer data = messageData(buffer, position, end);
+                    if (data != null)
+                        System.out.println(topic + ": " + StandardCharsets.UTF_8.decode(data));
+                    buffer.position(end);
+                }
+                buffer.compact();
+            }
+        }
+    }
+
+    // Публикует одно сообщение
+    public void publish() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port))) {
+            send(channel, PacketTopic.PUBLISH, ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+            System.out.println("Published to " + topic);
+        }
+    }
+
+    // Тест рассылки: подписчики в одном потоке с селектором, издатель - в текущем потоке
+    public void fanOut() throws IOException, InterruptedException {
+        Selector selector = Selector.open();
+        List<SocketChannel> channels = new ArrayList<>();
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        for (int i = 0; i < subscribers; i++) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            send(channel, PacketTopic.SUBSCRIBE, null);
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(READ_BUFFER_SIZE));
+            channels.add(channel);
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram(); // задержка доставки (защищена монитором)
+        long expected = (long) subscribers * messages;
+        long[] received = {0};
+        Thread receiver = new Thread(() -> receive(selector, histogram, received, expected), "TopicReceiver");
+        receiver.start();
+
+        // подписки обрабатываются сервером асинхронно - даём время, чтобы они вступили в силу
+        Thread.sleep(SUBSCRIBE_DELAY);
+        SocketChannel publisher = SocketChannel.open(address);
+        publisher.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        StringBuilder body = new StringBuilder();
+        long start = System.nanoTime();
+        long interval = rate > 0 ? 1_000_000_000L / rate : 0;
+        long next = start;
+        for (int i = 0; i < messages; i++) {
+            if (interval > 0) {
+                long sleep = next - System.nanoTime();
+                if (sleep > 0)
+                    Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+                next += interval;
+            }
+            body.setLength(0);
+            body.append(System.nanoTime()).append(' ');
+            while (body.length() < size)
+                body.append('x');
+            send(publisher, PacketTopic.PUBLISH, ByteBuffer.wrap(body.toString().getBytes(StandardCharsets.US_ASCII)));
+        }
+        long published = System.nanoTime();
+
+        receiver.join(30_000);
+        long end = System.nanoTime();
+        selector.wakeup();
+        receiver.interrupt();
+        receiver.join();
+
+        long delivered;
+        synchronized (histogram) {
+            delivered = received[0];
+        }
+        System.out.printf("Published %d messages to %d subscribers in %.3f s%n",
+                messages, subscribers, (published - start) / 1e9);
+        System.out.printf("Delivered %d of %d (%.1f%%) in %.3f s, %.0f deliveries/s%n", delivered, expected,
+                100.0 * delivered / expected, (end - start) / 1e9, delivered / ((end - start) / 1e9));
+        synchronized (histogram) {
+            System.out.printf("Delivery latency, us: min=%d mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d%n",
+                    histogram.getMinValue(), histogram.getMean(), histogram.getValueAtPercentile(50),
+                    histogram.getValueAtPercentile(90), histogram.getValueAtPercentile(99),
+                    histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+        }
+
+        publisher.close();
+        for (SocketChannel channel : channels)
+            channel.close();
+        selector.close();
+    }
+
+    // Цикл приёма подписчиков: пока не получены все доставки или поток не прерван
+    private void receive(Selector selector, LatencyHistogram histogram, long[] received, long expected) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                synchronized (histogram) {
+                    if (received[0] >= expected)
+                        return;
+                }
+                selector.select(100);
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    ByteBuffer buffer = (ByteBuffer) key.attachment();
+                    if (((SocketChannel) key.channel()).read(buffer) == -1) {
+                        key.cancel();
+                        continue;
+                    }
+                    long now = System.nanoTime();
+                    buffer.flip();
+                    int position;
+                    while ((position = nextFrame(buffer)) >= 0) {
+                        int end = position + PacketBase.LENGTH_SIZE + buffer.getInt(position);
+                        ByteBuffer data = messageData(buffer, position, end);
+                        if (data != null) {
+                            long sendTime = LoadGenerator.parseTimestamp(data, data.position(), data.limit());
+                            synchronized (histogram) {
+                                histogram.recordValue((now - sendTime) / 1000);
+                                received[0]++;
+                            }
+                        }
+                        buffer.position(end);
+                    }
+                    buffer.compact();
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Receive error: ", e);
+        }
+    }
+
+    // Позиция следующего полного сообщения в буфере (-1 - сообщение пришло не полностью)
+    private static int nextFrame(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < PacketBase.HEADER_SIZE)
+            return -1;
+        int position = buffer.position();
+        int length = buffer.getInt(position);
+        if (length < PacketBase.TYPE_SIZE || length > READ_BUFFER_SIZE - PacketBase.LENGTH_SIZE)
+            throw new IOException("Wrong packet size: " + length);
+        return buffer.remaining() >= PacketBase.LENGTH_SIZE + length ? position : -1;
+    }
+
+    // Данные доставленного сообщения темы [position, end) (null - другое сообщение)
+    private static ByteBuffer messageData(ByteBuffer buffer, int position, int end) {
+        if (buffer.getInt(position + PacketBase.LENGTH_SIZE) != PacketTopic.type
+                || buffer.getInt(position + PacketBase.HEADER_SIZE) != PacketTopic.MESSAGE)
+            return null;
+        int nameLength = buffer.getInt(position + PacketBase.HEADER_SIZE + 4);
+        ByteBuffer data = buffer.duplicate();
+        data.position(position + PacketBase.HEADER_SIZE + 8 + nameLength);
+        data.limit(end);
+        return data;
+    }
+
+    // Отправляет операцию с темой (блокирующий канал)
+    private void send(SocketChannel channel, int operation, ByteBuffer data) throws IOException {
+        PooledBuffer frame = PacketTopic.encode(operation, topic, data);
+        try {
+            ByteBuffer buffer = frame.buffer();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } finally {
+            frame.release();
+        }
+    }
+}
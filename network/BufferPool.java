@@ -0,0 +1,154 @@
+package network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Пул direct буферов с размерными классами.
+// У каждого потока (цикла событий, потока обработки) есть свой кэш освобождённых буферов,
+// при его переполнении/опустошении используется общий пул.
+public final class BufferPool {
+    private static final int[] SIZE_CLASSES = {64, 256, 1024, 4096, 16384, 65536}; // размеры буферов в пуле
+
+    private static volatile int threadCacheSize = 64; // макс. кол-во буферов одного класса в кэше потока
+    private static volatile int maxPooled = 1024; // макс. кол-во буферов одного класса в общем пуле
+
+    private static final Queue<PooledBuffer>[] pools = newPools(); // общий пул (по классам)
+    private static final AtomicInteger[] poolSizes = newCounters(); // кол-во буферов в общем пуле (по классам)
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final ThreadLocal<ArrayDeque<PooledBuffer>[]> threadCaches =
+            ThreadLocal.withInitial(() -> {
+                ArrayDeque<PooledBuffer>[] caches = new ArrayDeque[SIZE_CLASSES.length];
+                for (int i = 0; i < caches.length; i++)
+                    caches[i] = new ArrayDeque<>();
+                return caches;
+            });
+
+    // статистика
+    private static final LongAdder acquired = new LongAdder(); // кол-во выданных буферов
+    private static final LongAdder recycled = new LongAdder(); // кол-во возвращённых буферов
+    private static final LongAdder threadCacheHits = new LongAdder(); // выдано из кэша потока
+    private static final LongAdder poolHits = new LongAdder(); // выдано из общего пула
+    private static final LongAdder allocated = new LongAdder(); // кол-во созданных direct буферов
+    private static final LongAdder allocatedBytes = new LongAdder(); // объём созданных direct буферов
+    private static final LongAdder unpooled = new LongAdder(); // буферы больше макс. класса (не кэшируются)
+    private static final LongAdder discarded = new LongAdder(); // буферы, не поместившиеся в пул
+
+    private BufferPool() {
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Queue<PooledBuffer>[] newPools() {
+        Queue<PooledBuffer>[] result = new Queue[SIZE_CLASSES.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = new ConcurrentLinkedQueue<>();
+        return result;
+    }
+
+    private static AtomicInteger[] newCounters() {
+        AtomicInteger[] result = new AtomicInteger[SIZE_CLASSES.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = new AtomicInteger(0);
+        return result;
+    }
+
+    // Устанавливает размеры кэшей (значения <= 0 игнорируются)
+    public static void configure(int threadCacheSize, int maxPooled) {
+        if(threadCacheSize > 0)
+            BufferPool.threadCacheSize = threadCacheSize;
+        if(maxPooled > 0)
+            BufferPool.maxPooled = maxPooled;
+    }
+
+    // Возвращает индекс размерного класса для заданного размера (-1 - размер больше макс. класса)
+    private static int sizeClassOf(int size) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if(size <= SIZE_CLASSES[i])
+                return i;
+        }
+        return -1;
+    }
+
+    // Выдаёт буфер ёмкостью не меньше size. Позиция 0, лимит = size, счётчик ссылок = 1
+    public static PooledBuffer acquire(int size) {
+        if(size < 0)
+            throw new IllegalArgumentException("Invalid buffer size: " + size);
+        acquired.increment();
+
+        int sizeClass = sizeClassOf(size);
+        if(sizeClass == -1) {
+            unpooled.increment();
+            return allocate(size, -1).reset(size);
+        }
+
+        PooledBuffer buffer = threadCaches.get()[sizeClass].pollLast();
+        if(buffer != null) {
+            threadCacheHits.increment();
+            return buffer.reset(size);
+        }
+
+        buffer = pools[sizeClass].poll();
+        if(buffer != null) {
+            poolSizes[sizeClass].decrementAndGet();
+            poolHits.increment();
+            return buffer.reset(size);
+        }
+
+        return allocate(SIZE_CLASSES[sizeClass], sizeClass).reset(size);
+    }
+
+    private static PooledBuffer allocate(int capacity, int sizeClass) {
+        allocated.increment();
+        allocatedBytes.add(capacity);
+        return new PooledBuffer(ByteBuffer.allocateDirect(capacity), sizeClass);
+    }
+
+    // Возвращает буфер в пул (вызывается из PooledBuffer.release())
+    static void recycle(PooledBuffer buffer) {
+        recycled.increment();
+        int sizeClass = buffer.getSizeClass();
+        if(sizeClass == -1)
+            return;
+
+        ArrayDeque<PooledBuffer> cache = threadCaches.get()[sizeClass];
+        if(cache.size() < threadCacheSize) {
+            cache.addLast(buffer);
+            return;
+        }
+
+        if(poolSizes[sizeClass].incrementAndGet() <= maxPooled) {
+            pools[sizeClass].add(buffer);
+        }
+        else {
+            poolSizes[sizeClass].decrementAndGet();
+            discarded.increment();
+        }
+    }
+
+    // Кол-во буферов выданных и ещё не возвращённых в пул
+    public static long getActiveCount() {
+        return acquired.sum() - recycled.sum();
+    }
+
+    // Статистика пула в виде строки
+    public static String getStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Buffers acquired = ").append(acquired.sum()).append('\n');
+        sb.append("Buffers recycled = ").append(recycled.sum()).append('\n');
+        sb.append("Buffers in use = ").append(getActiveCount()).append('\n');
+        sb.append("Thread cache hits = ").append(threadCacheHits.sum()).append('\n');
+        sb.append("Shared pool hits = ").append(poolHits.sum()).append('\n');
+        sb.append("Direct allocations = ").append(allocated.sum())
+                .append(" (").append(allocatedBytes.sum()).append(" bytes)").append('\n');
+        sb.append("Unpooled allocations = ").append(unpooled.sum()).append('\n');
+        sb.append("Discarded buffers = ").append(discarded.sum()).append('\n');
+        sb.append("Shared pool size by class:");
+        for (int i = 0; i < SIZE_CLASSES.length; i++)
+            sb.append(' ').append(SIZE_CLASSES[i]).append('=').append(poolSizes[i].get());
+        return sb.toString();
+    }
+}
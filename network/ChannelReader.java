@@ -4,40 +4,45 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.channels.SelectionKey;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 public class ChannelReader {
     private static final Logger logger = LoggerFactory.getLogger(ChannelReader.class.getName());
 
     private static final int DEFAULT_MESSAGE_SIZE = 1024; // константа, размер буфера по умолчанию
     private static final int HEADER_LENGTH = PacketBase.HEADER_SIZE; // константа, кол-ва байт для передачи длинны сообщения
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE; // признак отсутствия ping/pong
 
-    private final SelectionKey clientKey; // ключ
     private final int MESSAGE_SIZE; // размер буфера
     private final SocketChannel clientChannel; // канал клиента
 
 
-    private PacketBase packetBase; // текущее сообщение
+    private PooledBuffer readBuffer; // накопительный буфер для сбора сообщений по частям (direct, из пула)
     private boolean hasMessageTail = false; // признак того, что сообщение пришло не полностью
+    private boolean closed = false; // признак того, что буфер возвращён в пул
+    private volatile boolean batchReceived = false; // признак того, что клиент присылал пакетные сообщения
+    private volatile int requestedCodec = -1; // алгоритм сжатия, запрошенный клиентом (-1 - не запрашивался)
+    private volatile boolean compressionAccepted = false; // признак того, что сжатые сообщения принимаются
+    private volatile long pingTimestamp = NO_TIMESTAMP; // время отправки последнего принятого ping (ответит ClientBase)
+    private volatile long pongTimestamp = NO_TIMESTAMP; // время отправки ping из последнего принятого pong
+    private int lastReadBytes = 0; // кол-во байт, считанных последним вызовом read
 
     // Конструктор по умолчанию. Устанавливает максимальный размер сообщения по умолчанию
-    public ChannelReader(SelectionKey clientKey) throws IOException {
-        this(clientKey, DEFAULT_MESSAGE_SIZE);
+    public ChannelReader(SocketChannel clientChannel) throws IOException {
+        this(clientChannel, DEFAULT_MESSAGE_SIZE);
     }
 
     // Конструктор. Устанавлиеваем максимальный размер сообщения из переданного параметра
-    public ChannelReader(SelectionKey clientKey, int MESSAGE_SIZE) throws IOException {
+    public ChannelReader(SocketChannel clientChannel, int MESSAGE_SIZE) throws IOException {
         // проверяем валидность параметров
-        if(clientKey != null &&
+        if(clientChannel != null &&
                 (MESSAGE_SIZE > 0 && MESSAGE_SIZE <= Integer.MAX_VALUE )) {
-            this.clientKey = clientKey;
+            this.clientChannel = clientChannel;
             this.MESSAGE_SIZE = MESSAGE_SIZE;
 
-            packetBase = new PacketBase(this.MESSAGE_SIZE);
-            clientChannel = (SocketChannel) this.clientKey.channel();
+            readBuffer = BufferPool.acquire(this.MESSAGE_SIZE);
         }
         else
             throw new IOException("Invalid params value");
@@ -48,15 +53,59 @@ public class ChannelReader {
         return hasMessageTail;
     }
 
-    // Метод считывает данные из канала и сохраняет в классе PacketBase.
-    // Возвращает очередь вх. сообщений.
-    public Queue<PacketBase> read() throws IOException {
+    // Метод возвращает признак того, что клиент присылал пакетные сообщения (PacketBatch)
+    public boolean isBatchReceived() {
+        return batchReceived;
+    }
+
+    // Метод возвращает алгоритм сжатия из последнего запроса согласования (-1 - запроса не было)
+    // и сбрасывает запрос
+    public int pollRequestedCodec() {
+        int codec = this.requestedCodec;
+        this.requestedCodec = -1;
+        return codec;
+    }
+
+    // Метод возвращает кол-во байт, считанных из канала последним вызовом read
+    public int getLastReadBytes() {
+        return lastReadBytes;
+    }
+
+    // Метод возвращает время отправки из последнего принятого ping (NO_TIMESTAMP - ping не было)
+    // и сбрасывает его
+    public long pollPingTimestamp() {
+        long timestamp = this.pingTimestamp;
+        this.pingTimestamp = NO_TIMESTAMP;
+        return timestamp;
+    }
+
+    // Метод возвращает время отправки ping из последнего принятого pong (NO_TIMESTAMP - pong не было)
+    // и сбрасывает его
+    public long pollPongTimestamp() {
+        long timestamp = this.pongTimestamp;
+        this.pongTimestamp = NO_TIMESTAMP;
+        return timestamp;
+    }
+
+    // Разрешает приём сжатых сообщений (после согласования сжатия)
+    public void acceptCompression(boolean accept) {
+        this.compressionAccepted = accept;
+    }
+
+    // Метод считывает данные из канала в накопительный буфер и разбирает его на сообщения.
+    // Сообщения не копируются: каждое получает срез накопительного буфера (PacketBase владеет срезом).
+    // Разобранные сообщения добавляются в переданную очередь. Возвращает кол-во новых сообщений.
+    public synchronized int read(Queue<PacketBase> inputPacketQueue) throws IOException {
+        if(this.closed)
+            throw new IOException("Channel reader is closed");
+
+        ByteBuffer buffer = this.readBuffer.buffer();
         int numRead; // будет хранить кол-во считанных байтов или статус
-        int position; // будет хранить текущую позицию буфера
 
         try {
             // считывам данные из канала и запоминаем кол-во считанных байт
-            numRead = this.clientChannel.read(this.packetBase.readBuffer);
+            numRead = this.clientChannel.read(buffer);
+            Metrics.readCalls.increment();
         } catch (IOException e) { // ошибка чтения
             IOException exception = new IOException("Client unexpectedly disconnected");
             exception.addSuppressed(e);
@@ -70,71 +119,116 @@ public class ChannelReader {
             throw new IOException("No data received. Close connection");
         }
 
-        Queue<PacketBase> inputPacketQueue = new LinkedBlockingQueue<>();
+        Metrics.bytesIn.add(numRead);
+        this.lastReadBytes = numRead;
+        int count = 0; // кол-во разобранных сообщений
         this.hasMessageTail = false;
-        int hasBytes = 0; // хранит кол-во оставщихся в буфера байт
 
-        // Цикл считывания PacketBase из буфера
-        do {
-            position = this.packetBase.readBuffer.position(); // запоминаем текущую позицию буфера
-
-            // Проверяем пришел ли заголовок сообщения
-            if (position < HEADER_LENGTH) {
-                // Заголовок первого сообщения пришел не полностью.
-                // Прерываем цикл и ждем следующей порции данных.
-                logger.debug("Received packet is too small: header < 12");
-                this.hasMessageTail = true;
-                if(position != 0) {
-                    // проверяем что это не первый проход
-                    this.packetBase.readBuffer.position(position); // устанавливаем конечный элемент буфера
-                    this.packetBase.readBuffer.limit(this.MESSAGE_SIZE);
-                }
-                break;
-            }
+        buffer.flip(); // переводим буфер в режим чтения
+        int position = buffer.position(); // курсор чтения
+        int limit = buffer.limit();
 
-            // Заголовок сообщения полностью дошел. Обрабатываем дальше...
-            this.packetBase.readBuffer.position(0); // устанавливаем буфер в начало чтобы прочитать длинну сообщения
-            int messageLength = this.packetBase.readBuffer.getInt(); // читаем длинну сообщения
+        // Цикл считывания PacketBase из буфера
+        while (limit - position >= HEADER_LENGTH) {
+            int messageLength = buffer.getInt(position); // читаем длинну сообщения
 
             // Проверка валидности длинны сообщения (0 < messageLength < размер буфера)
             if(messageLength <= 0 || messageLength > (this.MESSAGE_SIZE - PacketBase.LENGTH_SIZE)) {
-                // Длинна пакета не верная.  Прерываем цикл обработки буфера.
-                logger.debug("Wrong packet size (May be packet is corrupt)");
-                // Наверно нужно сделать ресет соединения
-                break;
+                // Длинна пакета не верная. Дальнейший разбор потока невозможен, сбрасываем соединение
+                EventLog.log(EventLog.WRONG_SIZE, messageLength);
+                Metrics.decodeErrors.increment();
+                throw new IOException("Wrong packet size: " + messageLength);
             }
 
+            int frameLength = PacketBase.LENGTH_SIZE + messageLength;
             // Проверям пришло ли сообщение полностью
-            if (messageLength > (position - PacketBase.LENGTH_SIZE)) {
-                // Тело сообщения пришло не полностью.
-                // Прерываем цикл и ждем следующей порции данных.
-                logger.debug("Received packet is too small: body < len ({})", messageLength);
-                this.packetBase.readBuffer.position(position); // устанавливаем конечный элемент буфера
-                this.packetBase.readBuffer.limit(this.MESSAGE_SIZE); // устанавливаем лимит буфера
-                this.hasMessageTail = true; // устанавливаем флаг сообщение пришло не полностью
+            if (limit - position < frameLength) {
+                // Тело сообщения пришло не полностью. Ждем следующей порции данных.
+                EventLog.log(EventLog.BODY_INCOMPLETE, messageLength);
                 break;
             }
 
-            // Сообщение полностью дошло
-            this.packetBase.readBuffer(messageLength); // копируем сообщение в объект сообщения
-            inputPacketQueue.add(this.packetBase.clone()); // записываем в буффер вх. сообщений новое
-            //inputPacketQueue.add(PacketFactory.createPacket(this.packetBase)); // записываем в буффер вх. сообщений новое
-            this.packetBase.clear(); // очищаем объект
-
-            // Проверям есть ли в буфере ещё сообщения
-            hasBytes = (position - PacketBase.LENGTH_SIZE) - messageLength;
-            if(hasBytes > 0) {
-                // Сообщение ещё есть
-                this.packetBase.readBuffer.position(hasBytes); // устанавливаем правильную позицию в буфере
-                this.packetBase.readBuffer.limit(hasBytes); // устанавливаем лимит буфера
+            int packetType = buffer.getInt(position + PacketBase.LENGTH_SIZE);
+            try {
+                if(packetType == FrameCompression.CONTROL_TYPE) {
+                    // Запрос согласования сжатия. Ответ отправит ClientBase
+                    this.requestedCodec = FrameCompression.readControlCodec(buffer, position, frameLength);
+                }
+                else if(packetType == Heartbeat.PING_TYPE) {
+                    // Проверка связи. Pong отправит ClientBase (на несколько ping за чтение - один ответ)
+                    this.pingTimestamp = Heartbeat.readTimestamp(buffer, position, frameLength);
+                    Heartbeat.pingsIn.increment();
+                }
+                else if(packetType == Heartbeat.PONG_TYPE) {
+                    this.pongTimestamp = Heartbeat.readTimestamp(buffer, position, frameLength);
+                }
+                else if(FrameCompression.isCompressed(packetType)) {
+                    if(!this.compressionAccepted)
+                        throw new IOException("Compression was not negotiated");
+                    // Сжатое сообщение распаковывается в отдельный буфер пула
+                    PooledBuffer frame = FrameCompression.decompress(buffer, position, frameLength,
+                            this.MESSAGE_SIZE - PacketBase.HEADER_SIZE);
+                    try {
+                        count += this.addFrame(frame, 0, frame.buffer().remaining(), inputPacketQueue);
+                    } finally {
+                        frame.release();
+                    }
+                }
+                else
+                    count += this.addFrame(this.readBuffer, position, frameLength, inputPacketQueue);
+            } catch (IOException e) {
+                Metrics.decodeErrors.increment();
+                throw e;
             }
+            position += frameLength;
+        }
+        buffer.position(position);
+        Metrics.packetsIn.add(count);
 
-        } while (!this.hasMessageTail && hasBytes > 0); // если ещё сообщения есть, то читаем снова
+        if(buffer.hasRemaining()) { // в буфере осталось начало следующего сообщения
+            if(buffer.remaining() < HEADER_LENGTH)
+                EventLog.log(EventLog.HEADER_INCOMPLETE, HEADER_LENGTH);
+            this.hasMessageTail = true;
+        }
 
-        // Проверям что очередь вх. сообщение не пуст
-        if(inputPacketQueue.size() > 0)
-            return inputPacketQueue; // возвращаем очередь вх. сообщений
-        else
-            return null;
+        // Один раз за чтение освобождаем место в буфере.
+        // Если на буфер ещё ссылаются срезы сообщений, сдвигать данные нельзя:
+        // переносим остаток в новый буфер, а старый вернётся в пул после освобождения всех срезов.
+        if(this.readBuffer.refCnt() > 1) {
+            PooledBuffer newBuffer = BufferPool.acquire(this.MESSAGE_SIZE);
+            newBuffer.buffer().put(buffer);
+            this.readBuffer.release();
+            this.readBuffer = newBuffer;
+        }
+        else {
+            buffer.compact(); // возвращаем буфер в режим записи, остаток сообщения в начале
+        }
+
+        return count;
+    }
+
+    // Добавляет в очередь сообщение [position, position + frameLength) буфера source
+    // (пакетное - разбирается на вложенные). Возвращает кол-во сообщений
+    private int addFrame(PooledBuffer source, int position, int frameLength, Queue<PacketBase> inputPacketQueue)
+            throws IOException {
+        if(source.buffer().getInt(position + PacketBase.LENGTH_SIZE) == PacketBatch.TYPE) {
+            // Пакетное сообщение. Вложенные сообщения добавляются в очередь за один проход
+            int count = PacketBatch.unpack(source, position, frameLength, inputPacketQueue);
+            Metrics.batchesIn.increment();
+            this.batchReceived = true;
+            return count;
+        }
+        // Сообщение полностью дошло. Отдаём срез буфера без копирования,
+        // поля зарегистрированных типов декодируются прямо из среза
+        inputPacketQueue.add(PacketFactory.createPacket(source.retainedSlice(position, frameLength)));
+        return 1;
+    }
+
+    // Возвращает буфер чтения в пул
+    public synchronized void close() {
+        if(!this.closed) {
+            this.closed = true;
+            this.readBuffer.release();
+        }
     }
 }
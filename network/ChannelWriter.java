@@ -5,85 +5,317 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ChannelWriter {
     private static final Logger logger = LoggerFactory.getLogger(ChannelWriter.class.getName());
 
-    private final SelectionKey clientKey; // ключ
+    private static final int MAX_GATHER_BUFFERS = 64; // макс. кол-во буферов, отправляемых за один вызов write
+
+    // Пороги очереди отправки (байт). Выше верхнего порога чтение из канала приостанавливается,
+    // ниже нижнего - возобновляется
+    private static volatile long highWatermark = 64 * 1024;
+    private static volatile long lowWatermark = 32 * 1024;
+    private static volatile long totalPendingCap = 64L * 1024 * 1024; // общий лимит очередей отправки всех клиентов
+    // Упаковка ответов в пакетные сообщения (PacketBatch) для клиентов, которые сами их присылают
+    private static volatile boolean batchEnabled = true;
+    private static volatile int batchMaxSize = 1024; // макс. размер пакетного сообщения (байт)
+    private static final AtomicLong totalPendingBytes = new AtomicLong(0); // байт в очередях отправки всех клиентов
+
     private final SocketChannel clientChannel; // канал клиента
-    private final ConcurrentLinkedQueue<PacketBase> outputQueue = new ConcurrentLinkedQueue<PacketBase>();
+    // очередь отправки. Хранит уже закодированные сообщения в буферах пула (PooledBuffer)
+    // и файлы для отправки без копирования (FileRegion), позиция сохраняется между вызовами write
+    private final ConcurrentLinkedQueue<Object> outputQueue = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer[] gatherBuffers = new ByteBuffer[MAX_GATHER_BUFFERS]; // массив для gathering write
+    private boolean closed = false; // признак того, что очередь отправки освобождена
+    private volatile long pendingBytes = 0; // кол-во байт в очереди отправки
+    private volatile boolean batching = false; // признак упаковки ответов в пакетные сообщения
+    private PacketBatch batch = null; // собираемое пакетное сообщение
+    private volatile boolean compressing = false; // признак сжатия сообщений (сжатие согласовано)
+    private volatile int pendingFiles = 0; // кол-во файлов в очереди отправки (не учитываются в pendingBytes)
+    private volatile long lastWriteTime = System.nanoTime(); // время последней записи в канал (System.nanoTime())
 
     // Конструктор по умолчанию. Устанавливает максимальный размер сообщения по умолчанию
-    public ChannelWriter(SelectionKey clientKey) throws IOException {
-        this.clientKey = clientKey;
-        this.clientChannel = (SocketChannel) clientKey.channel();
+    public ChannelWriter(SocketChannel clientChannel) throws IOException {
+        if(clientChannel == null)
+            throw new IOException("Client channel is null");
+        this.clientChannel = clientChannel;
+    }
+
+    // Устанавливает пороги очереди отправки (значения <= 0 игнорируются)
+    public static void configureWatermarks(long high, long low, long totalCap) {
+        if(high > 0)
+            highWatermark = high;
+        if(low > 0)
+            lowWatermark = Math.min(low, highWatermark);
+        if(totalCap > 0)
+            totalPendingCap = totalCap;
+    }
+
+    // Настраивает упаковку ответов в пакетные сообщения (maxSize <= заголовка игнорируется)
+    public static void configureBatching(boolean enabled, int maxSize) {
+        batchEnabled = enabled;
+        if(maxSize > PacketBase.HEADER_SIZE)
+            batchMaxSize = maxSize;
+    }
+
+    // Включает упаковку ответов в пакетные сообщения (если она разрешена настройками)
+    public void enableBatching() {
+        if(batchEnabled)
+            this.batching = true;
+    }
+
+    // Включает сжатие сообщений больше порога FrameCompression (после согласования с клиентом)
+    public void enableCompression() {
+        this.compressing = true;
+    }
+
+    public boolean isCompressing() {
+        return this.compressing;
+    }
+
+    // Кол-во байт в очередях отправки всех клиентов
+    public static long getTotalPendingBytes() {
+        return totalPendingBytes.get();
+    }
+
+    // Кол-во байт в очереди отправки
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    // Возвращает признак наличия неотправленных данных (сообщений или файлов)
+    public boolean hasPendingOutput() {
+        return this.pendingBytes > 0 || this.pendingFiles > 0;
+    }
+
+    // Метод добавляет файл в очередь отправки (после уже поставленных сообщений).
+    // Файл не учитывается в порогах очереди: данные не занимают память JVM
+    public synchronized void addFileToOutputQueue(FileRegion region) {
+        if(this.closed) {
+            region.close();
+            return;
+        }
+        this.outputQueue.add(region);
+        this.pendingFiles++;
+    }
+
+    // Время последней записи данных в канал (System.nanoTime()), до первой записи - время создания
+    public long getLastWriteTime() {
+        return this.lastWriteTime;
+    }
+
+    // Возвращает признак превышения верхнего порога очереди отправки
+    // (собственного или общего для всех клиентов)
+    public boolean isAboveHighWatermark() {
+        long pending = this.pendingBytes;
+        return pending > highWatermark || (pending > 0 && totalPendingBytes.get() > totalPendingCap);
+    }
+
+    // Возвращает признак того, что очередь отправки опустилась ниже нижнего порога
+    public boolean isBelowLowWatermark() {
+        long pending = this.pendingBytes;
+        return pending == 0 || (pending <= lowWatermark && totalPendingBytes.get() <= totalPendingCap);
+    }
+
+    // Метод кодирует сообщение (один раз) и добавляет в очередь отправки.
+    // Очередь забирает буфер сообщения себе, сообщение освобождается
+    public synchronized void addToOutputQueue(PacketBase packetBase) {
+        if(packetBase == null) return;
+        if(this.closed) {
+            packetBase.release();
+            return;
+        }
+        PooledBuffer frame = packetBase.retainFrame();
+        packetBase.release();
+        this.enqueue(frame);
+    }
+
+    // Метод добавляет в очередь отправки общий (разделяемый) буфер сообщения.
+    // Очередь забирает ссылку на буфер. Буфер не сжимается: он уже закодирован для всех получателей
+    public synchronized void addSharedToOutputQueue(PooledBuffer frame) {
+        if(this.closed) {
+            frame.release();
+            return;
+        }
+        this.outputQueue.add(frame);
+        this.addPendingBytes(frame.buffer().remaining());
     }
 
-    // Метод добавляет считанное сообщение в очередь отправки
+    // Метод забирает сообщения из переданной очереди и добавляет в очередь отправки.
+    // Если включена упаковка, сообщения одного вызова (один проход обработки) собираются
+    // в пакетные сообщения размером до batchMaxSize
     public void addAllToOutputQueue(Queue<PacketBase> packetBases) {
-        if(packetBases != null)
-            this.outputQueue.addAll(packetBases);
+        if(packetBases == null) return;
+        if(this.batching) {
+            this.addAllBatched(packetBases);
+            return;
+        }
+        PacketBase packetBase;
+        while ((packetBase = packetBases.poll()) != null) {
+            this.addToOutputQueue(packetBase);
+        }
+    }
+
+    private synchronized void addAllBatched(Queue<PacketBase> packetBases) {
+        if(this.batch == null)
+            this.batch = new PacketBatch(batchMaxSize);
+        PacketBase packetBase;
+        while ((packetBase = packetBases.poll()) != null) {
+            if(this.closed) {
+                packetBase.release();
+                continue;
+            }
+            PooledBuffer frame = packetBase.retainFrame();
+            packetBase.release();
+            if(frame.buffer().remaining() > batchMaxSize - PacketBase.HEADER_SIZE) {
+                // сообщение не помещается в пакет: отправляем отдельно, сохраняя порядок
+                this.enqueueBatch();
+                this.enqueue(frame);
+            }
+            else if(!this.batch.add(frame)) {
+                this.enqueueBatch();
+                this.batch.add(frame);
+            }
+        }
+        this.enqueueBatch();
+    }
+
+    // Завершает собираемое пакетное сообщение и добавляет его в очередь отправки
+    private void enqueueBatch() {
+        if(this.batch.getCount() > 1)
+            Metrics.batchesOut.increment();
+        PooledBuffer frame = this.batch.finish();
+        if(frame != null)
+            this.enqueue(frame);
+    }
+
+    // Добавляет закодированное сообщение в очередь отправки (сжимает, если сжатие согласовано)
+    private void enqueue(PooledBuffer frame) {
+        if(this.compressing) {
+            PooledBuffer compressed = FrameCompression.compress(frame);
+            if(compressed != null) {
+                frame.release();
+                frame = compressed;
+            }
+        }
+        this.outputQueue.add(frame);
+        this.addPendingBytes(frame.buffer().remaining());
     }
 
-    // Метод отправляет данные из очереди отправки в канал клиента
+    // Метод отправляет данные из очереди отправки в канал клиента.
+    // За один вызов write отправляется до MAX_GATHER_BUFFERS сообщений.
+    // Частично отправленный буфер остаётся в начале очереди и дописывается с места остановки.
     // Возвращает статус отправки (0 - что-то не отправлено , 1 - успешная отправка и переключемся в режим "читать")
-    public int write() throws IOException {
-        Iterator<PacketBase> iterator = this.outputQueue.iterator(); // формируем итератор исходящей очереди
-        int numWrite = 0; // будет хранить кол-во записанных байтов
-
-        while (iterator.hasNext()) { // проходим по элементам исходящей очереди
-            PacketBase packetBase = iterator.next(); // запоминаем текущий элемент
-            ByteBuffer bb = packetBase.getByteBufferMessage(); // преобразовываем в bytebuffer
-
-            if (bb.position() < bb.limit()) { // проверям корректность буфера
-                try {
-                    numWrite = this.clientChannel.write(bb); // записываем в канал данные из буфера и получам кол-во записанных байтов
-                } catch (IOException e) {
-                    IOException exception = new IOException("Client unexpectedly disconnected");
-                    exception.addSuppressed(e);
-                    throw exception;
-                }
+    public synchronized int write() throws IOException {
+        if(this.closed)
+            throw new IOException("Channel writer is closed");
 
-                if (numWrite == -1) {
-                    // Штатно закрылся канал. Закрываем....
-                    throw new IOException("Channel is closed");
-                } else if (numWrite == 0) {
-                    // заполнились внутренние буфера джавы и операционки.
-                    logger.debug("Write buffer is full. Break processing");
+        while (true) {
+            // собираем буферы из начала очереди (до первого файла)
+            int count = 0;
+            Iterator<Object> iterator = this.outputQueue.iterator();
+            Object head = null;
+            while (iterator.hasNext() && count < MAX_GATHER_BUFFERS) {
+                head = iterator.next();
+                if(!(head instanceof PooledBuffer))
                     break;
-                } else if (numWrite > 0) {
-                    // записали полностью или частично буфер.
-                    if (bb.remaining() == 0) {
-                        // полностью буфер записали, удаляем из списка.
-                        logger.debug("Packet send successful");
-                        iterator.remove();
-                    } else {
-                        // записан текущий буфер частично
-                        // а значит - прерываем цикл обхода буферов.
-                        logger.debug("Packet send not full");
-                        break;
-                    }
-                }
+                this.gatherBuffers[count++] = ((PooledBuffer) head).buffer();
             }
-            // если список буферов пуст, то есть, записали все, то переключаемся в режим "хочу читать!"
-            if (this.outputQueue.size() == 0) {
-                logger.debug("All messages was send");
+
+            if (count == 0) {
+                if(head instanceof FileRegion) {
+                    // файл в начале очереди: отправляем без копирования
+                    if(!this.writeFile((FileRegion) head))
+                        return 0;
+                    continue;
+                }
+                EventLog.log(EventLog.ALL_SENT);
                 return 1;
             }
+
+            long numWrite; // будет хранить кол-во записанных байтов
+            try {
+                numWrite = this.clientChannel.write(this.gatherBuffers, 0, count); // записываем в канал все собранные буферы
+                Metrics.writeCalls.increment();
+            } catch (IOException e) {
+                IOException exception = new IOException("Client unexpectedly disconnected");
+                exception.addSuppressed(e);
+                throw exception;
+            }
+            this.addPendingBytes(-numWrite);
+            if(numWrite > 0)
+                this.lastWriteTime = System.nanoTime();
+
+            // удаляем из очереди полностью записанные буферы и возвращаем их в пул
+            int sent = 0;
+            while (sent < count && !this.gatherBuffers[sent].hasRemaining()) {
+                ((PooledBuffer) this.outputQueue.poll()).release();
+                sent++;
+            }
+            Arrays.fill(this.gatherBuffers, 0, count, null);
+            Metrics.bytesOut.add(numWrite);
+            Metrics.packetsOut.add(sent);
+
+            if (sent < count) {
+                // заполнились внутренние буфера джавы и операционки.
+                // Остаток будет дописан при следующем OP_WRITE
+                Metrics.partialWrites.increment();
+                EventLog.log(EventLog.PARTIAL_WRITE, numWrite);
+                return 0;
+            }
         }
+    }
 
-        if (this.outputQueue.size() != 0) {
-            logger.debug("No all messages was send");
+    // Отправляет файл из начала очереди. Возвращает true, если файл отправлен полностью
+    private boolean writeFile(FileRegion region) throws IOException {
+        long numWrite;
+        try {
+            numWrite = region.transferTo(this.clientChannel);
+            Metrics.writeCalls.increment();
+        } catch (IOException e) {
+            IOException exception = new IOException("File transfer error");
+            exception.addSuppressed(e);
+            throw exception;
         }
-        else {
-            logger.debug("No messages to send");
+        Metrics.bytesOut.add(numWrite);
+        Metrics.fileBytesOut.add(numWrite);
+        if(numWrite > 0)
+            this.lastWriteTime = System.nanoTime();
+        if(!region.isDone()) {
+            Metrics.partialWrites.increment();
+            EventLog.log(EventLog.PARTIAL_WRITE, numWrite);
+            return false;
         }
+        this.outputQueue.poll();
+        this.pendingFiles--;
+        region.close();
+        Metrics.filesSent.increment();
+        return true;
+    }
+
+    // Освобождает буферы и закрывает файлы, оставшиеся в очереди отправки
+    public synchronized void close() {
+        if(this.closed) return;
+        this.closed = true;
+        Object item;
+        while ((item = this.outputQueue.poll()) != null) {
+            if(item instanceof FileRegion)
+                ((FileRegion) item).close();
+            else
+                ((PooledBuffer) item).release();
+        }
+        this.pendingFiles = 0;
+        this.addPendingBytes(-this.pendingBytes);
+    }
 
-        return 0;
+    private void addPendingBytes(long bytes) {
+        this.pendingBytes += bytes;
+        totalPendingBytes.addAndGet(bytes);
     }
 }
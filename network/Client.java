@@ -2,73 +2,395 @@ package network;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
+
+import network.packets.Packet100Message;
+import network.packets.PacketChunk;
+import network.packets.PacketTopic;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 // Класс экземпляра клиента.
 // Наследется от ClientBase (реализация чтения и записи канала)
 // Отвечает за обработку пакетов (работает в отдельном потоке)
-public class Client extends ClientBase implements Runnable {
+public class Client extends ClientBase implements PacketLanes.Task {
     private static final Logger logger = LoggerFactory.getLogger(Client.class.getName());
     private static enum SessionStates {INIT, AUTH, CONNECTED, CLOSED}
     private final SessionStates connectionState = SessionStates.INIT;
     private final Date connectTime = new Date();
 
+    private static final byte[] QUIT_COMMAND = "quit".getBytes(StandardCharsets.US_ASCII); // команда завершения сессии
+    private static final byte[] GET_COMMAND = "get ".getBytes(StandardCharsets.US_ASCII); // команда отправки файла
+    private static final int MAX_PROCESSING_BATCH = 64; // макс. кол-во сообщений, обрабатываемых за один запуск
+    private static final int MAX_STREAMS = 16; // макс. кол-во одновременных входящих потоков клиента
+
+    // Обработчики потоковых сообщений: тип сообщения => обработчик
+    private static final StreamHandler[] streamHandlers = new StreamHandler[PacketFactory.MAX_PACKET_TYPE + 1];
+    private static volatile StreamHandler defaultStreamHandler = new ChecksumStreamHandler();
+    private static volatile Path fileRoot = null; // каталог файлов для команды get (null - команда отключена)
+    private static volatile Consumer<Client> closeListener = null; // вызывается при закрытии канала клиента
+
+    private final Map<Integer, StreamHandler.Stream> streams = new HashMap<>(); // входящие потоки по ИД
+    private int nextStreamId = 1; // ИД следующего исходящего потока
+    private final Set<String> topics = ConcurrentHashMap.newKeySet(); // темы, на которые подписан клиент
+    // признак того, что обработка клиента запланирована или выполняется (не более одной задачи на клиента)
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile Executor executor; // исполнитель, в котором выполняется обработка
+    private volatile long scheduleTime; // время постановки задачи в исполнитель (для статистики ожидания)
+    private volatile int lane = PacketLanes.INTERACTIVE; // полоса приоритета задачи обработки
+
     // Конструктор принимает SelectionKey, присваивает ИД и запоминает сессию клиента
-    public Client(SelectionKey clientKey, int clientId) throws IOException {
-        super(clientKey, clientId);
+    public Client(SelectionKey clientKey, int clientId, Executor eventLoop) throws IOException {
+        super(clientKey, clientId, eventLoop);
+    }
+
+    // Конструктор для канала без селектора (блокирующий режим, поток на подключение)
+    public Client(SocketChannel clientChannel, int clientId) throws IOException {
+        super(clientChannel, clientId);
+    }
+
+    // Регистрирует обработчик потоковых сообщений типа messageType (null - обработчик по умолчанию)
+    public static synchronized void registerStreamHandler(int messageType, StreamHandler handler) {
+        if (messageType < 0 || messageType > PacketFactory.MAX_PACKET_TYPE)
+            throw new IllegalArgumentException("Message type out of range: " + messageType);
+        streamHandlers[messageType] = handler;
+    }
+
+    // Устанавливает каталог файлов для команды get (null или пустая строка - команда отключена)
+    public static void configureFileRoot(String directory) {
+        if (directory == null || directory.isEmpty())
+            fileRoot = null;
+        else
+            fileRoot = Paths.get(directory).toAbsolutePath().normalize();
+    }
+
+    // Устанавливает обработчик закрытия канала (например, удаление сессии из индекса).
+    // Может быть вызван несколько раз для одного клиента
+    public static void configureCloseListener(Consumer<Client> listener) {
+        closeListener = listener;
     }
 
     public Date getConnectTime() {
         return connectTime;
     }
 
+    // Ставит обработку очереди вх. сообщений в исполнитель.
+    // Если обработка уже запланирована или выполняется, новая задача не создаётся:
+    // сообщения будут обработаны текущей задачей в порядке поступления
+    public void schedule(Executor executor) {
+        if (this.scheduled.compareAndSet(false, true)) {
+            this.executor = executor;
+            this.lane = this.pendingLane();
+            this.scheduleTime = System.nanoTime();
+            executor.execute(this);
+        }
+    }
+
+    // Полоса приоритета задачи обработки (для очереди исполнителя)
+    @Override
+    public int getLane() {
+        return this.lane;
+    }
+
+    // Самая приоритетная полоса среди сообщений, которые обработает следующий запуск
+    // (просматривается не больше MAX_PROCESSING_BATCH сообщений)
+    private int pendingLane() {
+        int result = PacketLanes.LANE_COUNT - 1;
+        int checked = 0;
+        for (PacketBase packetBase : this.inputPacketBaseQueue) {
+            if (checked++ >= MAX_PROCESSING_BATCH)
+                break;
+            int packetLane = packetBase.bodyEqualsIgnoreCase(QUIT_COMMAND) ?
+                    PacketLanes.CONTROL : PacketLanes.laneOf(packetBase.getPacketType());
+            if (packetLane < result) {
+                result = packetLane;
+                if (result == PacketLanes.CONTROL)
+                    break;
+            }
+        }
+        return checked == 0 ? PacketLanes.INTERACTIVE : result;
+    }
+
     // запускается в отдельном потоке для обработки очереди вх. сообщений
     @Override
     public void run() {
-        MDC.put("clientId", String.valueOf(this.clientId));
-        Thread.currentThread().setName("pThread-" + this.clientId);
+        EventLog.enter(this.clientId);
+        Metrics.tasksExecuted.increment();
+        Metrics.taskWaitNanos.add(System.nanoTime() - this.scheduleTime);
+
+        EventLog.log(EventLog.TASK_STARTED);
+
+        this.processInputQueue(MAX_PROCESSING_BATCH);
 
-        logger.debug("New processing thread executed");
+        if((this.outputPacketBaseQueue.size() > 0 || channelWriter.hasPendingOutput()) && this.isOpen()) {
+            channelWriter.addAllToOutputQueue(this.outputPacketBaseQueue);
+            // Пытаемся сразу отправить данные из потока обработки.
+            // Если записано не всё (или чтение приостановлено), то флаги ключа пересчитает цикл событий:
+            // выставит OP_WRITE и, при превышении порога очереди отправки, снимет OP_READ
+            int result = this.flushOutput();
+            if(result == 0 || (result == 1 && this.isReadSuspended())) {
+                this.requestInterestOpsUpdate();
+                EventLog.log(EventLog.OUTPUT_PENDING);
+            }
+        }
 
+        EventLog.exit();
+
+        // Снимаем признак планирования. Если за время обработки пришли новые сообщения,
+        // ставим клиента в конец очереди исполнителя, чтобы другие клиенты тоже получили поток
+        this.scheduled.set(false);
+        if (!this.inputPacketBaseQueue.isEmpty() && this.isOpen()) {
+            this.schedule(this.executor);
+        }
+    }
+
+    // Обработка в блокирующем режиме (в потоке подключения):
+    // обрабатывает все вх. сообщения и отправляет ответы в канал.
+    // Возвращает результат записи (-1 - канал закрыт)
+    public int processAndFlush() {
+        this.processInputQueue(Integer.MAX_VALUE);
+        if (!this.isOpen())
+            return -1;
+        if (this.outputPacketBaseQueue.isEmpty() && !channelWriter.hasPendingOutput())
+            return 1;
+        channelWriter.addAllToOutputQueue(this.outputPacketBaseQueue);
+        return this.write();
+    }
+
+    // Обрабатывает не более maxPackets сообщений из очереди вх. сообщений
+    private void processInputQueue(int maxPackets) {
         PacketBase packetBase; // экземпяр сообщения
-        // В цикле обрабатываем все сообщения из очереди вх. сообщений
-        while ((packetBase = inputPacketBaseQueue.poll()) != null) {
+        int processed = 0; // кол-во обработанных сообщений
+        // В цикле обрабатываем сообщения из очереди вх. сообщений (не больше maxPackets,
+        // чтобы один клиент не занимал поток надолго)
+        while (processed++ < maxPackets && (packetBase = inputPacketBaseQueue.poll()) != null) {
             // обрабатываем сообщение и получаем результат
             int result = this.processingPacket(packetBase);
             if (result == -1) {
                 // Пришла комманда зарыть соединение или пустое сообщение. Закрываем канал.
+                packetBase.release();
                 this.closeChannel();
             }
         }
-
-        if(this.outputPacketBaseQueue.size() > 0 && this.clientKey.isValid()) {
-            channelWriter.addAllToOutputQueue(this.outputPacketBaseQueue);
-            // выставляем флаг о том что необходимо отправить данные
-            this.clientKey.interestOps(SelectionKey.OP_WRITE);
-            logger.debug("Changing channel mode to OP_WRITE");
-        }
-
-        MDC.remove("clientId");
     }
 
     // Метод отвечающий за обработку входящих сообщений
     private int processingPacket(PacketBase packetBase) {
-        logger.debug("Process packet: {}", packetBase);
+        EventLog.log(EventLog.PACKET_PROCESS, packetBase.getPacketLength(), packetBase.getPacketType());
 
-        // Завершаем сессию, если пришло сообщение "quit"
-        if ("quit".equals(packetBase.getPacketBodyStr().toLowerCase())) {
+        // Завершаем сессию, если пришло сообщение "quit" (сравнение по байтам, без декодирования строки)
+        if (packetBase.bodyEqualsIgnoreCase(QUIT_COMMAND)) {
             return -1;
         }
 
+        // Часть потокового сообщения - передаётся обработчику потока, сообщение освобождается
+        if (packetBase instanceof PacketChunk) {
+            if (!this.processChunk((PacketChunk) packetBase))
+                return -1;
+            packetBase.release();
+            return 1;
+        }
+
+        // Подписка и публикация (pub/sub)
+        if (packetBase instanceof PacketTopic) {
+            if (!this.processTopic((PacketTopic) packetBase))
+                return -1;
+            packetBase.release();
+            return 1;
+        }
+
+        // Команда get <имя файла> - отправка файла без копирования.
+        // Если каталог файлов не задан, команда отключена и сообщение обрабатывается как обычное (эхо)
+        if (fileRoot != null && packetBase.bodyStartsWith(GET_COMMAND)) {
+            String name = packetBase.getPacketBodyStr().substring(GET_COMMAND.length).trim();
+            packetBase.release();
+            this.sendFile(name);
+            return 1;
+        }
+
         // ТУТ ДОЛЖНА БЫТЬ ОБРАБОТКА
 
         this.outputPacketBaseQueue.add(packetBase); // кладем готовое сообщениев очередь исходящих сообщений
-        logger.debug("Packet added to outgoing queue: {}", packetBase);
+        EventLog.log(EventLog.PACKET_QUEUED, packetBase.getPacketLength(), packetBase.getPacketType());
 
         return 1;
     }
+
+    // Ставит сообщение в очередь ответов (вызывается из потока обработки, например обработчиком потока)
+    public void reply(PacketBase packetBase) {
+        this.outputPacketBaseQueue.add(packetBase);
+    }
+
+    // Передаёт часть потокового сообщения обработчику. Возвращает false при нарушении протокола
+    private boolean processChunk(PacketChunk chunk) {
+        if (!chunk.isValid())
+            return false;
+        Metrics.chunksIn.increment();
+        synchronized (this.streams) {
+            StreamHandler.Stream stream = this.streams.get(chunk.getStreamId());
+            if (chunk.isFirst()) {
+                if (stream != null || this.streams.size() >= MAX_STREAMS)
+                    return false; // поток уже открыт или слишком много потоков
+                stream = new StreamHandler.Stream(chunk.getStreamId(), chunk.getMessageType());
+                this.streams.put(stream.getStreamId(), stream);
+                Metrics.streamsIn.increment();
+                getStreamHandler(stream.getMessageType()).onStart(this, stream);
+            }
+            else if (stream == null)
+                return false; // часть без начала потока
+
+            StreamHandler handler = getStreamHandler(stream.getMessageType());
+            ByteBuffer data = chunk.getData();
+            if (data.hasRemaining()) {
+                stream.addBytes(data.remaining());
+                handler.onData(this, stream, data);
+            }
+            if (chunk.isLast() || chunk.isAborted()) {
+                this.streams.remove(stream.getStreamId());
+                handler.onEnd(this, stream, chunk.isAborted());
+            }
+        }
+        return true;
+    }
+
+    // Выполняет операцию подписки. Возвращает false при нарушении протокола
+    private boolean processTopic(PacketTopic packet) {
+        if (!packet.isValid())
+            return false;
+        String topic = packet.getTopic();
+        switch (packet.getOperation()) {
+            case PacketTopic.SUBSCRIBE:
+                if (this.topics.add(topic))
+                    TopicRegistry.subscribe(topic, this);
+                return true;
+            case PacketTopic.UNSUBSCRIBE:
+                if (this.topics.remove(topic))
+                    TopicRegistry.unsubscribe(topic, this);
+                return true;
+            case PacketTopic.PUBLISH:
+                // ответы, полученные раньше, отправляются до публикации (в т.ч. самому себе)
+                channelWriter.addAllToOutputQueue(this.outputPacketBaseQueue);
+                TopicRegistry.publish(topic, packet.getData());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Отписывает клиента от всех тем
+    private void unsubscribeAll() {
+        for (String topic : this.topics) {
+            if (this.topics.remove(topic))
+                TopicRegistry.unsubscribe(topic, this);
+        }
+    }
+
+    // Прерывает незавершённые входящие потоки (при закрытии подключения)
+    private void abortStreams() {
+        synchronized (this.streams) {
+            for (StreamHandler.Stream stream : this.streams.values())
+                getStreamHandler(stream.getMessageType()).onEnd(this, stream, true);
+            this.streams.clear();
+        }
+    }
+
+    private static StreamHandler getStreamHandler(int messageType) {
+        StreamHandler handler = messageType >= 0 && messageType <= PacketFactory.MAX_PACKET_TYPE ?
+                streamHandlers[messageType] : null;
+        return handler != null ? handler : defaultStreamHandler;
+    }
+
+    // Отправляет файл из каталога fileRoot потоком PacketChunk (FileChannel.transferTo в канал клиента).
+    // Если файла нет - отвечает текстовым сообщением об ошибке
+    private void sendFile(String name) {
+        Path root = fileRoot;
+        Path path = null;
+        try {
+            // сравниваются реальные пути (символические ссылки раскрыты): ссылка внутри каталога
+            // не должна давать доступ к файлам вне его
+            if (root != null)
+                path = root.resolve(name).toRealPath();
+            if (path != null && !path.startsWith(root.toRealPath()))
+                path = null;
+        } catch (InvalidPathException | IOException e) {
+            path = null;
+        }
+        if (path == null || !Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            this.reply(new Packet100Message("get: file not found: " + name));
+            return;
+        }
+
+        FileChannel file;
+        try {
+            file = FileChannel.open(path, StandardOpenOption.READ, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            logger.debug("File open error: ", e);
+            this.reply(new Packet100Message("get: file read error: " + name));
+            return;
+        }
+        try {
+            // ответы, полученные раньше, отправляются перед файлом
+            channelWriter.addAllToOutputQueue(this.outputPacketBaseQueue);
+            int chunkSize = getMaxPacketSize() - PacketChunk.FRAME_HEADER_SIZE;
+            channelWriter.addFileToOutputQueue(new FileRegion(file, 0, file.size(), this.nextStreamId++,
+                    PacketChunk.FILE_CONTENT, chunkSize));
+        } catch (IOException e) {
+            logger.debug("File size error: ", e);
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void closeChannel() {
+        super.closeChannel();
+        this.abortStreams();
+        this.unsubscribeAll();
+        Consumer<Client> listener = closeListener;
+        if (listener != null)
+            listener.accept(this);
+    }
+
+    // Обработчик потоков по умолчанию: считает размер и CRC32 данных
+    // и по завершении отвечает текстовым сообщением "stream <ИД>: <байт> bytes, crc32=<hex>"
+    private static class ChecksumStreamHandler implements StreamHandler {
+        @Override
+        public void onStart(Client client, Stream stream) {
+            stream.setAttachment(new CRC32());
+        }
+
+        @Override
+        public void onData(Client client, Stream stream, ByteBuffer data) {
+            ((CRC32) stream.getAttachment()).update(data);
+        }
+
+        @Override
+        public void onEnd(Client client, Stream stream, boolean aborted) {
+            if (aborted || !client.isOpen())
+                return;
+            client.reply(new Packet100Message("stream " + stream.getStreamId() + ": " + stream.getBytes() +
+                    " bytes, crc32=" + Long.toHexString(((CRC32) stream.getAttachment()).getValue())));
+        }
+    }
 }
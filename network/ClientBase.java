@@ -2,37 +2,111 @@ package network;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 
 import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 // Базовый класс экземпляра клиента.
 // Реализует чтение и запись в канал клиента, закрытие канала
 public class ClientBase {
     protected static final Logger logger = LoggerFactory.getLogger(ClientBase.class.getName());
     protected final int clientId; // текущий ИД клиента
-    protected final SelectionKey clientKey; // ключ (для получения/отправки данных)
+    protected final SelectionKey clientKey; // ключ (для получения/отправки данных). null для блокирующего канала
+    protected final SocketChannel clientChannel; // канал клиента
+    protected final Executor eventLoop; // цикл событий, обслуживающий ключ (флаги ключа меняются только в нём)
     protected final ChannelReader channelReader;
     protected final ChannelWriter channelWriter;
+    protected final Heartbeat heartbeat = new Heartbeat(); // оценка RTT по ping/pong
 
     protected Queue<PacketBase> inputPacketBaseQueue = new ConcurrentLinkedQueue<>(); // очередь входящих сообщений для обработки
     protected Queue<PacketBase> outputPacketBaseQueue = new ConcurrentLinkedQueue<>(); // очередь исходящих сообщений для обработки
-    public int NET_MAX_PACKET_SIZE = 1024;
+    private static volatile int maxPacketSize = 1024; // макс. размер сообщения с заголовком (network.packet.maxsize)
+    // лимиты скорости чтения клиента (0 - без лимита) и допустимые всплески (0 - равны лимиту за секунду)
+    private static volatile long packetRate = 0; // сообщений в секунду
+    private static volatile long packetBurst = 0;
+    private static volatile long byteRate = 0; // байт в секунду
+    private static volatile long byteBurst = 0;
+    private static volatile boolean readingStopped = false; // признак того, что чтение всех каналов прекращено (остановка сервера)
+    private volatile boolean readSuspended = false; // признак того, что чтение приостановлено (переполнена очередь отправки)
+    private final AtomicBoolean interestUpdateQueued = new AtomicBoolean(false); // признак того, что смена флагов ключа уже в очереди цикла
+    private volatile Executor flushExecutor; // дозапись очереди отправки блокирующего канала (null - не задан)
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false); // признак того, что дозапись уже в очереди
+    private volatile long lastReadTime = System.nanoTime(); // время последнего чтения из канала (System.nanoTime())
+    // корзины токенов лимитов скорости (null - лимит отключён). Используются только потоком чтения канала
+    private final TokenBucket packetBucket = packetRate > 0 ? new TokenBucket(packetRate, packetBurst) : null;
+    private final TokenBucket byteBucket = byteRate > 0 ? new TokenBucket(byteRate, byteBurst) : null;
+    private volatile boolean readThrottled = false; // признак того, что чтение приостановлено (кончились токены)
+    private long throttleTime; // время начала приостановки по лимиту
 
     // Конструктор принимает SelectionKey, присваивает ИД и запоминает сессию клиента
-    public ClientBase(SelectionKey clientKey, int clientId) throws IOException {
-        if(clientKey != null) {
+    public ClientBase(SelectionKey clientKey, int clientId, Executor eventLoop) throws IOException {
+        if(clientKey != null && eventLoop != null) {
             this.clientKey = clientKey;
+            this.clientChannel = (SocketChannel) clientKey.channel();
+            this.eventLoop = eventLoop;
             this.clientId = clientId;
-            channelReader = new ChannelReader(this.clientKey, NET_MAX_PACKET_SIZE);
-            channelWriter = new ChannelWriter(this.clientKey);
+            channelReader = new ChannelReader(this.clientChannel, maxPacketSize);
+            channelWriter = new ChannelWriter(this.clientChannel);
         }
         else
-            throw new IOException("Selection key is null");
+            throw new IOException("Selection key or event loop is null");
+    }
+
+    // Конструктор для канала без селектора (блокирующий режим, поток на подключение)
+    public ClientBase(SocketChannel clientChannel, int clientId) throws IOException {
+        if(clientChannel != null) {
+            this.clientKey = null;
+            this.clientChannel = clientChannel;
+            this.eventLoop = null;
+            this.clientId = clientId;
+            channelReader = new ChannelReader(this.clientChannel, maxPacketSize);
+            channelWriter = new ChannelWriter(this.clientChannel);
+        }
+        else
+            throw new IOException("Client channel is null");
+    }
+
+    // Устанавливает макс. размер сообщения для новых подключений (значения <= заголовка игнорируются).
+    // Сообщения больше этого размера передаются частями (PacketChunk)
+    public static void configureMaxPacketSize(int size) {
+        if(size > PacketBase.HEADER_SIZE)
+            maxPacketSize = size;
+    }
+
+    // Макс. размер сообщения с заголовком
+    public static int getMaxPacketSize() {
+        return maxPacketSize;
+    }
+
+    // Устанавливает лимиты скорости чтения для новых подключений: сообщений и байт в секунду
+    // (0 - без лимита) и допустимые всплески (0 - равны лимиту за секунду)
+    public static void configureRateLimits(long packetsPerSecond, long packetsBurst, long bytesPerSecond, long bytesBurst) {
+        packetRate = Math.max(packetsPerSecond, 0);
+        packetBurst = Math.max(packetsBurst, 0);
+        byteRate = Math.max(bytesPerSecond, 0);
+        byteBurst = Math.max(bytesBurst, 0);
+    }
+
+    // Прекращает чтение всех каналов (остановка сервера): OP_READ больше не выставляется.
+    // Для немедленного снятия OP_READ у зарегистрированных каналов вызывается refreshInterestOps()
+    public static void stopReading() {
+        readingStopped = true;
+    }
+
+    // Признак того, что чтение каналов прекращено
+    public static boolean isReadingStopped() {
+        return readingStopped;
+    }
+
+    // Признак того, что задан хотя бы один лимит скорости
+    public static boolean isRateLimited() {
+        return packetRate > 0 || byteRate > 0;
     }
 
     // геттер ИД клиента
@@ -40,75 +114,330 @@ public class ClientBase {
         return clientId;
     }
 
+    // Время последнего чтения из канала (System.nanoTime()), до первого чтения - время подключения
+    public long getLastReadTime() {
+        return this.lastReadTime;
+    }
+
+    // Время последней записи в канал (System.nanoTime()), до первой записи - время подключения
+    public long getLastWriteTime() {
+        return channelWriter.getLastWriteTime();
+    }
+
+    // Оценка времени оборота (RTT) подключения
+    public Heartbeat getHeartbeat() {
+        return this.heartbeat;
+    }
+
+    // Кол-во сообщений в очереди вх. сообщений
+    public int getInputQueueSize() {
+        return this.inputPacketBaseQueue.size();
+    }
+
+    // Кол-во байт в очереди отправки
+    public long getPendingOutputBytes() {
+        return channelWriter.getPendingBytes();
+    }
+
+    // Признак того, что есть неотправленные ответы (в т.ч. ещё не переданные в очередь отправки)
+    public boolean hasPendingOutput() {
+        return !this.outputPacketBaseQueue.isEmpty() || channelWriter.hasPendingOutput();
+    }
+
+    // Возвращает признак того, что канал клиента открыт
+    public boolean isOpen() {
+        if(this.clientKey != null)
+            return this.clientKey.isValid();
+        return this.clientChannel.isOpen();
+    }
+
     // Метод-адаптер. Читаем пакет из канала.
     // Возвращает результат типа int
     public int read() {
-        MDC.put("clientId", String.valueOf(this.clientId));
-        logger.debug("Read message...");
+        EventLog.enter(this.clientId);
+        EventLog.log(EventLog.READ);
+        this.lastReadTime = System.nanoTime();
 
         try {
-            // Читаем пакет и получаем массив сообщений
-            Queue<PacketBase> packetBaseQueue = channelReader.read();
-            if(packetBaseQueue != null) { // если не null, то добавляем в очередь сообщений
-                this.inputPacketBaseQueue.addAll(packetBaseQueue);
-            }
+            // Читаем пакет, сообщения сразу попадают в очередь вх. сообщений
+            int count = channelReader.read(this.inputPacketBaseQueue);
+            this.consumeTokens(count, channelReader.getLastReadBytes());
+            if(channelReader.isBatchReceived())
+                channelWriter.enableBatching(); // клиент понимает пакетные сообщения, отвечаем так же
+            int codec = channelReader.pollRequestedCodec();
+            if(codec != -1)
+                this.negotiateCompression(codec);
+            long pong = channelReader.pollPongTimestamp();
+            if(pong != ChannelReader.NO_TIMESTAMP)
+                this.heartbeat.onPong(pong, System.nanoTime());
+            long ping = channelReader.pollPingTimestamp();
+            if(ping != ChannelReader.NO_TIMESTAMP)
+                this.sendControl(Heartbeat.newPacket(Heartbeat.PONG_TYPE, ping));
         } catch (IOException e) {
             // Ошибка, возвращаем -1
-            logger.debug("Read channel error (May be client disconnected)");
+            EventLog.log(EventLog.READ_ERROR);
             this.closeChannel();
+            EventLog.exit();
             return -1;
         }
 
         // Если очередь сообщений не пуста, то возвращаем 1
         if(this.inputPacketBaseQueue.size() > 0) {
-            logger.debug("Received {} messages", this.inputPacketBaseQueue.size());
+            EventLog.log(EventLog.READ_RECEIVED, this.inputPacketBaseQueue.size());
             if(channelReader.hasMessageTail())
-                logger.debug("Buffer has tail of message!");
-            MDC.remove("clientId");
+                EventLog.log(EventLog.READ_TAIL);
+            EventLog.exit();
             return 1;
         }
         else { // Сообщение не полное. Возвращает 0 и ждём следующих пакетов.
-            logger.debug("Packet is null or not full");
-            MDC.remove("clientId");
+            EventLog.log(EventLog.READ_INCOMPLETE);
+            EventLog.exit();
             return 0;
         }
     }
 
-    // Метод-адаптер. Записывает пакет из канал
+    // Списывает токены лимитов скорости за прочитанные сообщения и байты.
+    // Если токенов не хватило - чтение приостанавливается до пополнения. Данные не теряются:
+    // непрочитанное остаётся в буфере сокета, и TCP притормаживает отправителя
+    private void consumeTokens(int packets, int bytes) {
+        if(this.packetBucket == null && this.byteBucket == null)
+            return;
+        long now = System.nanoTime();
+        if(this.packetBucket != null)
+            this.packetBucket.consume(packets, now);
+        if(this.byteBucket != null)
+            this.byteBucket.consume(bytes, now);
+        long delay = this.getThrottleDelay(now);
+        if(delay > 0 && !this.readThrottled) {
+            this.readThrottled = true;
+            this.throttleTime = now;
+            Metrics.readThrottles.increment();
+            EventLog.log(EventLog.READ_THROTTLE, delay / 1000);
+            this.updateInterestOps();
+        }
+    }
+
+    // Время до пополнения токенов лимитов скорости, нс (0 - читать можно).
+    // Вызывается в потоке чтения канала
+    public long getThrottleDelay(long now) {
+        long delay = 0;
+        if(this.packetBucket != null)
+            delay = this.packetBucket.nanosUntil(0, now);
+        if(this.byteBucket != null)
+            delay = Math.max(delay, this.byteBucket.nanosUntil(0, now));
+        return delay;
+    }
+
+    // Признак того, что чтение приостановлено по лимиту скорости
+    public boolean isReadThrottled() {
+        return this.readThrottled;
+    }
+
+    // Возобновляет чтение после пополнения токенов (вызывается в потоке чтения канала)
+    public void resumeReading() {
+        if(!this.readThrottled)
+            return;
+        this.readThrottled = false;
+        long paused = System.nanoTime() - this.throttleTime;
+        Metrics.readThrottleNanos.add(paused);
+        EventLog.log(EventLog.READ_UNTHROTTLE, paused / 1000);
+        this.updateInterestOps();
+    }
+
+    // Отвечает на запрос согласования сжатия: deflate - если сервер разрешает сжатие, иначе - отказ.
+    // Ответ отправляется несжатым, дальнейшие сообщения больше порога сжимаются в обе стороны
+    private void negotiateCompression(int codec) {
+        boolean accepted = codec == FrameCompression.CODEC_DEFLATE && FrameCompression.isEnabled();
+        channelReader.acceptCompression(accepted);
+        channelWriter.addToOutputQueue(FrameCompression.newControlPacket(
+                accepted ? FrameCompression.CODEC_DEFLATE : FrameCompression.CODEC_NONE));
+        if(accepted)
+            channelWriter.enableCompression();
+        if(this.clientKey != null)
+            this.updateInterestOps(); // вызывается в цикле событий: выставляем OP_WRITE для ответа
+        else
+            this.flushOutput();
+    }
+
+    // Отправляет ping (вызывается таймером цикла событий). Если очередь отправки выше верхнего порога,
+    // ping пропускается: замер RTT показал бы время очереди, а не сети
+    public void sendPing() {
+        if(!this.isOpen() || channelWriter.isAboveHighWatermark())
+            return;
+        Heartbeat.pingsOut.increment();
+        this.sendControl(Heartbeat.newPacket(Heartbeat.PING_TYPE, System.nanoTime()));
+    }
+
+    // Отправляет управляющее сообщение в потоке чтения канала (цикл событий или поток подключения),
+    // минуя обработку клиента. Если записано не всё - остаток допишется по OP_WRITE
+    private void sendControl(PacketBase packetBase) {
+        channelWriter.addToOutputQueue(packetBase);
+        if(this.flushOutput() == 0)
+            this.updateInterestOps();
+    }
+
+    // Устанавливает исполнитель дозаписи для блокирующего канала (поток на подключение).
+    // Сообщения, отправляемые из чужих потоков (рассылка тем), пишутся в канал в этом исполнителе,
+    // а не в потоке отправителя: блокирующая запись медленному клиенту не должна останавливать отправителя
+    public void setFlushExecutor(Executor executor) {
+        this.flushExecutor = executor;
+    }
+
+    // Ставит дозапись очереди отправки блокирующего канала в исполнитель (повторные запросы объединяются)
+    private void requestFlush() {
+        Executor executor = this.flushExecutor;
+        if(executor == null || !this.flushQueued.compareAndSet(false, true))
+            return;
+        executor.execute(() -> {
+            this.flushQueued.set(false);
+            if(this.isOpen())
+                this.flushOutput();
+        });
+    }
+
+    // Отправляет общий (разделяемый между подписчиками) буфер сообщения: в очередь отправки
+    // попадает read-only дубликат. Вызывается в потоке цикла событий клиента
+    // (для блокирующего канала - в потоке публикации: сообщение только ставится в очередь,
+    // запись выполняет исполнитель дозаписи, поэтому очередь медленного подписчика растёт до верхнего порога).
+    // Возвращает 1 - отправлено или в очереди, 0 - пропущено (очередь выше верхнего порога), -1 - канал закрыт
+    int deliverShared(PooledBuffer frame) {
+        if(!this.isOpen())
+            return -1;
+        if(this.clientKey == null) {
+            if(this.flushExecutor == null || channelWriter.isAboveHighWatermark())
+                return 0;
+            channelWriter.addSharedToOutputQueue(frame.retainedReadOnlyDuplicate());
+            this.requestFlush();
+            return 1;
+        }
+        if(channelWriter.isAboveHighWatermark())
+            return 0;
+        channelWriter.addSharedToOutputQueue(frame.retainedReadOnlyDuplicate());
+        int result = this.flushOutput();
+        if(result == 0)
+            this.updateInterestOps(); // остаток допишется по OP_WRITE
+        return result == -1 ? -1 : 1;
+    }
+
+    // Отправляет сообщение из любого потока (прямая адресация по ИД клиента).
+    // Сообщение кодируется в очередь отправки и сразу пишется в канал. Если записано не всё,
+    // флаги ключа пересчитает цикл событий (остаток допишется по OP_WRITE).
+    // Для блокирующего канала запись выполняется в вызывающем потоке.
+    // Возвращает false - канал закрыт или очередь отправки выше верхнего порога (сообщение освобождается)
+    public boolean send(PacketBase packetBase) {
+        if(!this.isOpen() || channelWriter.isAboveHighWatermark()) {
+            packetBase.release();
+            return false;
+        }
+        channelWriter.addToOutputQueue(packetBase);
+        int result = this.flushOutput();
+        if(result == 0 || (result == 1 && this.isReadSuspended()))
+            this.requestInterestOpsUpdate();
+        return result != -1;
+    }
+
+    // Метод-адаптер. Записывает пакет из канал (вызывается циклом событий по OP_WRITE)
     // Возвращает результатам типа int
     public int write() {
-        MDC.put("clientId", String.valueOf(this.clientId));
-        logger.debug("Write message...");
-        int result;
+        EventLog.enter(this.clientId);
+        EventLog.log(EventLog.WRITE);
+        int result = this.flushOutput();
+        if(result != -1)
+            this.updateInterestOps(); // если всё отправлено - снимаем OP_WRITE, возобновляем чтение
+        EventLog.exit();
+        return result;
+    }
+
+    // Пишет данные очереди отправки в канал (без ожидания OP_WRITE).
+    // Возвращает 1 - всё отправлено, 0 - отправлено частично, -1 - ошибка записи (канал закрыт)
+    protected int flushOutput() {
         try {
             // Пишем сообщение в канал и получаем результат
-            result = channelWriter.write();
-            if(result == 1) {
-                // Если успешно - переходим в режим чтения канала
-                logger.debug("Changing channel mode to OP_READ");
-                this.clientKey.interestOps(SelectionKey.OP_READ);
-                MDC.remove("clientId");
-                return 1;
-            }
-            return 0;
+            return channelWriter.write();
         } catch (IOException e) {
-            logger.debug("Write to channel error (May be client disconnected)");
+            EventLog.log(EventLog.WRITE_ERROR);
             this.closeChannel();
-            MDC.remove("clientId");
             return -1;
         }
     }
 
+    // Запрашивает пересчёт флагов ключа из потока, отличного от цикла событий.
+    // Пересчёт выполняется в потоке цикла, повторные запросы до его выполнения объединяются
+    protected void requestInterestOpsUpdate() {
+        if(this.eventLoop == null)
+            return;
+        if(this.interestUpdateQueued.compareAndSet(false, true)) {
+            this.eventLoop.execute(() -> {
+                this.interestUpdateQueued.set(false);
+                this.updateInterestOps();
+            });
+        }
+    }
+
+    // Запрашивает пересчёт флагов ключа из любого потока (например, после stopReading())
+    public void refreshInterestOps() {
+        this.requestInterestOpsUpdate();
+    }
+
+    // Возвращает признак того, что чтение приостановлено
+    protected boolean isReadSuspended() {
+        return this.readSuspended;
+    }
+
+    // Пересчитывает флаги ключа по состоянию очереди отправки:
+    // OP_WRITE - если есть неотправленные данные,
+    // OP_READ - если очередь отправки не превысила верхний порог (после превышения - пока не опустится ниже нижнего)
+    // и чтение не приостановлено по лимиту скорости и не прекращено остановкой сервера.
+    // Вызывается только в потоке цикла событий
+    protected void updateInterestOps() {
+        if(this.clientKey == null || !this.clientKey.isValid())
+            return;
+
+        if(!this.readSuspended && channelWriter.isAboveHighWatermark()) {
+            this.readSuspended = true;
+            Metrics.readSuspends.increment();
+            EventLog.log(EventLog.READ_SUSPEND, channelWriter.getPendingBytes());
+        }
+        else if(this.readSuspended && channelWriter.isBelowLowWatermark()) {
+            this.readSuspended = false;
+            EventLog.log(EventLog.READ_RESUME, channelWriter.getPendingBytes());
+        }
+
+        int ops = readingStopped || this.readSuspended || this.readThrottled ? 0 : SelectionKey.OP_READ;
+        if(channelWriter.hasPendingOutput())
+            ops |= SelectionKey.OP_WRITE;
+        try {
+            this.clientKey.interestOps(ops);
+        } catch (CancelledKeyException e) {
+            EventLog.log(EventLog.KEY_CANCELLED);
+        }
+    }
+
     // Закрывает канал и отменяет ключ
     public void closeChannel() {
-        SocketChannel channel = (SocketChannel) this.clientKey.channel();
+        SocketChannel channel = this.clientChannel;
         try {
-            if(channel.isConnected())
+            if(channel.isConnected()) {
                 channel.close();
+                Metrics.connectionsClosed.increment();
+            }
         } catch (IOException e) {
             logger.debug("Close channel error: ", e);
         }
-        logger.debug("Client was disconnected");
-        clientKey.cancel();
+        EventLog.log(EventLog.DISCONNECTED);
+        if(this.clientKey != null)
+            this.clientKey.cancel();
+        this.releaseBuffers();
+    }
+
+    // Возвращает в пул буферы чтения/записи и буферы необработанных сообщений
+    protected void releaseBuffers() {
+        channelReader.close();
+        channelWriter.close();
+        PacketBase packetBase;
+        while ((packetBase = this.inputPacketBaseQueue.poll()) != null)
+            packetBase.release();
+        while ((packetBase = this.outputPacketBaseQueue.poll()) != null)
+            packetBase.release();
     }
 }
@@ -0,0 +1,255 @@
+package network;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Журнал событий горячего пути ввода/вывода (чтение/запись канала, обработка сообщений).
+// Событие - код и до двух числовых аргументов, записывается без выделения памяти в кольцевой буфер потока.
+// Фоновый поток EventLog забирает события из буферов, форматирует их и передаёт в logback
+// (логгер, уровень DEBUG, поток, время и clientId события сохраняются).
+// ИД клиента задаётся для потока через enter()/exit() и не требует MDC на каждое сообщение.
+// Если буфер потока заполнен, событие отбрасывается и учитывается в счётчике eventLogDrops
+public final class EventLog {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(EventLog.class.getName());
+
+    private static final int RING_SIZE = 1024; // кол-во событий в буфере потока (степень двойки)
+    private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10); // период опроса буферов
+    private static final String FQCN = EventLog.class.getName();
+
+    // коды событий
+    public static final int READ = 0;
+    public static final int READ_RECEIVED = 1;
+    public static final int READ_TAIL = 2;
+    public static final int READ_INCOMPLETE = 3;
+    public static final int READ_ERROR = 4;
+    public static final int WRITE = 5;
+    public static final int WRITE_ERROR = 6;
+    public static final int READ_SUSPEND = 7;
+    public static final int READ_RESUME = 8;
+    public static final int KEY_CANCELLED = 9;
+    public static final int DISCONNECTED = 10;
+    public static final int TASK_STARTED = 11;
+    public static final int PACKET_PROCESS = 12;
+    public static final int PACKET_QUEUED = 13;
+    public static final int OUTPUT_PENDING = 14;
+    public static final int WRONG_SIZE = 15;
+    public static final int BODY_INCOMPLETE = 16;
+    public static final int HEADER_INCOMPLETE = 17;
+    public static final int ALL_SENT = 18;
+    public static final int PARTIAL_WRITE = 19;
+    public static final int READ_THROTTLE = 20;
+    public static final int READ_UNTHROTTLE = 21;
+    private static final int EVENT_COUNT = 22;
+
+    private static final Logger[] eventLoggers = new Logger[EVENT_COUNT]; // логгер события
+    private static final String[] eventMessages = new String[EVENT_COUNT]; // шаблон сообщения события
+    private static final Logger[] sourceLoggers = { // логгеры всех событий
+            (Logger) LoggerFactory.getLogger(ClientBase.class.getName()),
+            (Logger) LoggerFactory.getLogger(Client.class.getName()),
+            (Logger) LoggerFactory.getLogger(ChannelReader.class.getName()),
+            (Logger) LoggerFactory.getLogger(ChannelWriter.class.getName())
+    };
+
+    static {
+        define(READ, ClientBase.class, "Read message...");
+        define(READ_RECEIVED, ClientBase.class, "Received {} messages");
+        define(READ_TAIL, ClientBase.class, "Buffer has tail of message!");
+        define(READ_INCOMPLETE, ClientBase.class, "Packet is null or not full");
+        define(READ_ERROR, ClientBase.class, "Read channel error (May be client disconnected)");
+        define(WRITE, ClientBase.class, "Write message...");
+        define(WRITE_ERROR, ClientBase.class, "Write to channel error (May be client disconnected)");
+        define(READ_SUSPEND, ClientBase.class, "Output queue is above high watermark ({} bytes). Suspend reading");
+        define(READ_RESUME, ClientBase.class, "Output queue is below low watermark ({} bytes). Resume reading");
+        define(KEY_CANCELLED, ClientBase.class, "Selection key is canceled");
+        define(DISCONNECTED, ClientBase.class, "Client was disconnected");
+        define(TASK_STARTED, Client.class, "New processing thread executed");
+        define(PACKET_PROCESS, Client.class, "Process packet: [{},{}]");
+        define(PACKET_QUEUED, Client.class, "Packet added to outgoing queue: [{},{}]");
+        define(OUTPUT_PENDING, Client.class, "Output is not fully sent. Request OP_WRITE");
+        define(WRONG_SIZE, ChannelReader.class, "Wrong packet size {} (May be packet is corrupt)");
+        define(BODY_INCOMPLETE, ChannelReader.class, "Received packet is too small: body < len ({})");
+        define(HEADER_INCOMPLETE, ChannelReader.class, "Received packet is too small: header < {}");
+        define(ALL_SENT, ChannelWriter.class, "All messages was send");
+        define(PARTIAL_WRITE, ChannelWriter.class, "Packet send not full ({} bytes written)");
+        define(READ_THROTTLE, ClientBase.class, "Rate limit exceeded. Pause reading for {} us");
+        define(READ_UNTHROTTLE, ClientBase.class, "Rate limit tokens refilled. Resume reading after {} us");
+    }
+
+    private static final List<EventRing> rings = new CopyOnWriteArrayList<>(); // буферы всех потоков
+    private static final ThreadLocal<EventRing> threadRing = ThreadLocal.withInitial(EventLog::newRing);
+    private static final LongAdder drops = Metrics.counter("eventLogDrops"); // отброшенные события
+    private static volatile Thread drainer; // фоновый поток вывода событий
+
+    private EventLog() {
+    }
+
+    private static void define(int event, Class<?> source, String message) {
+        eventLoggers[event] = (Logger) LoggerFactory.getLogger(source.getName());
+        eventMessages[event] = message;
+    }
+
+    // Признак того, что событие будет записано (уровень DEBUG включён для его логгера)
+    public static boolean isEnabled(int event) {
+        return eventLoggers[event].isDebugEnabled();
+    }
+
+    // Признак того, что уровень DEBUG включён хотя бы для одного логгера событий
+    private static boolean isAnyEnabled() {
+        for (Logger source : sourceLoggers) {
+            if (source.isDebugEnabled())
+                return true;
+        }
+        return false;
+    }
+
+    // Устанавливает ИД клиента для событий текущего потока.
+    // Если журнал выключен, буфер потока не создаётся
+    public static void enter(int clientId) {
+        if (isAnyEnabled())
+            threadRing.get().clientId = clientId;
+    }
+
+    // Сбрасывает ИД клиента для событий текущего потока
+    public static void exit() {
+        if (isAnyEnabled())
+            threadRing.get().clientId = 0;
+    }
+
+    public static void log(int event) {
+        log(event, 0, 0);
+    }
+
+    public static void log(int event, long arg) {
+        log(event, arg, 0);
+    }
+
+    // Записывает событие в буфер текущего потока
+    public static void log(int event, long arg1, long arg2) {
+        if (!eventLoggers[event].isDebugEnabled())
+            return;
+        if (!threadRing.get().offer(event, arg1, arg2))
+            drops.increment();
+    }
+
+    // Кол-во отброшенных событий
+    public static long getDropCount() {
+        return drops.sum();
+    }
+
+    // Создаёт буфер для текущего потока и запускает фоновый поток при первом обращении
+    private static EventRing newRing() {
+        EventRing ring = new EventRing(Thread.currentThread());
+        rings.add(ring);
+        if (drainer == null)
+            startDrainer();
+        return ring;
+    }
+
+    private static synchronized void startDrainer() {
+        if (drainer != null)
+            return;
+        Thread thread = new Thread(EventLog::drainLoop, "EventLog");
+        thread.setDaemon(true);
+        thread.start();
+        drainer = thread;
+        // при завершении программы выводим оставшиеся события
+        Runtime.getRuntime().addShutdownHook(new Thread(EventLog::flush, "EventLog-flush"));
+    }
+
+    // Выводит все накопленные события
+    public static void flush() {
+        for (EventRing ring : rings)
+            ring.drain();
+    }
+
+    // Цикл фонового потока: периодически выводит события из всех буферов
+    private static void drainLoop() {
+        long reportedDrops = 0;
+        while (true) {
+            boolean drained = false;
+            for (EventRing ring : rings) {
+                if (ring.drain() > 0)
+                    drained = true;
+                else if (!ring.owner.isAlive())
+                    rings.remove(ring); // поток завершился и все его события выведены
+            }
+
+            long dropCount = drops.sum();
+            if (dropCount != reportedDrops) {
+                logger.warn("Event log overflow: {} events dropped (total {})", dropCount - reportedDrops, dropCount);
+                reportedDrops = dropCount;
+            }
+
+            if (!drained)
+                LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+        }
+    }
+
+    // Кольцевой буфер событий потока: один писатель (поток-владелец), один читатель (поток EventLog).
+    // Поля события хранятся в параллельных массивах, выделенных заранее
+    private static final class EventRing {
+        private final Thread owner; // поток-владелец
+        private final String threadName; // имя потока
+        private final int[] events = new int[RING_SIZE];
+        private final int[] clientIds = new int[RING_SIZE];
+        private final long[] times = new long[RING_SIZE];
+        private final long[] args1 = new long[RING_SIZE];
+        private final long[] args2 = new long[RING_SIZE];
+        private final AtomicLong head = new AtomicLong(0); // следующее событие для чтения
+        private final AtomicLong tail = new AtomicLong(0); // следующая свободная ячейка
+        private int clientId = 0; // текущий ИД клиента потока (меняется только владельцем)
+
+        EventRing(Thread owner) {
+            this.owner = owner;
+            this.threadName = owner.getName();
+        }
+
+        // Записывает событие. Возвращает false, если буфер заполнен
+        boolean offer(int event, long arg1, long arg2) {
+            long t = tail.get();
+            if (t - head.get() >= RING_SIZE)
+                return false;
+            int index = (int) (t & (RING_SIZE - 1));
+            events[index] = event;
+            clientIds[index] = clientId;
+            times[index] = System.currentTimeMillis();
+            args1[index] = arg1;
+            args2[index] = arg2;
+            tail.lazySet(t + 1); // публикуем событие читателю
+            return true;
+        }
+
+        // Передаёт накопленные события в logback. Возвращает кол-во событий.
+        // Синхронизация нужна только между читателями (фоновый поток и flush())
+        synchronized int drain() {
+            long h = head.get();
+            long t = tail.get();
+            for (long i = h; i < t; i++) {
+                int index = (int) (i & (RING_SIZE - 1));
+                int event = events[index];
+                Logger eventLogger = eventLoggers[event];
+                LoggingEvent loggingEvent = new LoggingEvent(FQCN, eventLogger, Level.DEBUG, eventMessages[event],
+                        null, new Object[]{args1[index], args2[index]});
+                loggingEvent.setTimeStamp(times[index]);
+                loggingEvent.setThreadName(threadName);
+                int id = clientIds[index];
+                loggingEvent.setMDCPropertyMap(id != 0 ?
+                        Collections.singletonMap("clientId", String.valueOf(id)) :
+                        Collections.<String, String>emptyMap());
+                eventLogger.callAppenders(loggingEvent);
+                head.lazySet(i + 1); // освобождаем ячейку для писателя
+            }
+            return (int) (t - h);
+        }
+    }
+}
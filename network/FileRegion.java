@@ -0,0 +1,93 @@
+package network;
+
+import network.packets.PacketChunk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+// Часть файла для отправки без копирования (FileChannel.transferTo прямо в канал клиента).
+// Файл передаётся потоком PacketChunk: заголовки частей формируются по мере отправки,
+// данные частей ядро копирует из файла в сокет, минуя память JVM
+public final class FileRegion {
+    private final FileChannel file; // файл (закрывается после отправки)
+    private final int streamId; // ИД потока
+    private final int messageType; // тип потокового сообщения
+    private final int chunkSize; // макс. размер данных части
+    private final long end; // конец отправляемой части файла
+    private long position; // позиция следующего байта для отправки
+    private final ByteBuffer header = ByteBuffer.allocate(PacketChunk.FRAME_HEADER_SIZE); // заголовок текущей части
+    private long chunkRemaining = 0; // осталось отправить байт данных текущей части
+    private boolean started = false; // признак того, что первая часть сформирована
+    private boolean done = false; // признак того, что файл отправлен полностью
+
+    public FileRegion(FileChannel file, long position, long count, int streamId, int messageType, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be > 0");
+        this.file = file;
+        this.position = position;
+        this.end = position + count;
+        this.streamId = streamId;
+        this.messageType = messageType;
+        this.chunkSize = chunkSize;
+        this.header.limit(0);
+    }
+
+    // Признак того, что файл отправлен полностью
+    public boolean isDone() {
+        return done;
+    }
+
+    // Осталось отправить байт данных файла
+    public long remaining() {
+        return end - position;
+    }
+
+    // Отправляет в канал, пока он принимает данные. Возвращает кол-во записанных байт
+    public long transferTo(WritableByteChannel channel) throws IOException {
+        long written = 0;
+        while (!done) {
+            if (!header.hasRemaining() && chunkRemaining == 0) {
+                // формируем заголовок следующей части (пустой файл - одна пустая часть)
+                long chunk = Math.min(end - position, chunkSize);
+                int flags = (started ? 0 : PacketChunk.FIRST) | (position + chunk == end ? PacketChunk.LAST : 0);
+                header.clear();
+                PacketChunk.writeHeader(header, (int) chunk, streamId, messageType, flags);
+                header.flip();
+                chunkRemaining = chunk;
+                started = true;
+            }
+            if (header.hasRemaining()) {
+                written += channel.write(header);
+                if (header.hasRemaining())
+                    return written; // буфер сокета заполнен
+            }
+            if (chunkRemaining > 0) {
+                long count = file.transferTo(position, chunkRemaining, channel);
+                if (count <= 0) {
+                    if (position >= file.size())
+                        throw new IOException("File was truncated during transfer");
+                    return written;
+                }
+                position += count;
+                chunkRemaining -= count;
+                written += count;
+                if (chunkRemaining > 0)
+                    return written;
+            }
+            if (position == end)
+                done = true;
+        }
+        return written;
+    }
+
+    // Закрывает файл
+    public void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // файл только читался, ошибка закрытия не влияет на отправку
+        }
+    }
+}
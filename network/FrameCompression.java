@@ -0,0 +1,202 @@
+package network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Сжатие сообщений (deflate).
+// Сжатое сообщение помечается флагом FLAG в поле типа: [длина][тип | FLAG][исходная длина тела][сжатое тело].
+// Сжатие согласуется для каждого подключения управляющим сообщением CONTROL_TYPE (тело - int, код алгоритма):
+// клиент запрашивает CODEC_DEFLATE, сервер отвечает CODEC_DEFLATE (согласовано) или CODEC_NONE (отказ).
+// До согласования сжатые сообщения не принимаются и не отправляются.
+// Deflater/Inflater и рабочие массивы создаются один раз на поток и переиспользуются
+public final class FrameCompression {
+    public static final int FLAG = 0x40000000; // признак сжатого сообщения в поле типа
+    public static final int CONTROL_TYPE = 2; // ИД типа управляющего сообщения согласования
+    public static final int CODEC_NONE = 0; // без сжатия
+    public static final int CODEC_DEFLATE = 1; // deflate (java.util.zip)
+    private static final int RAW_LENGTH_SIZE = 4; // кол-во байт под исходную длину тела
+
+    private static volatile boolean enabled = true; // сервер соглашается на сжатие
+    private static volatile int threshold = 256; // мин. размер сообщения для сжатия (байт)
+    private static volatile int level = Deflater.BEST_SPEED; // уровень сжатия
+
+    // статистика: коэффициент сжатия и затраты процессора
+    private static final LongAdder compressedFrames = Metrics.counter("compressedFrames"); // сжато сообщений
+    private static final LongAdder compressRawBytes = Metrics.counter("compressRawBytes"); // байт до сжатия
+    private static final LongAdder compressBytes = Metrics.counter("compressBytes"); // байт после сжатия
+    private static final LongAdder compressNanos = Metrics.counter("compressNanos"); // время сжатия
+    private static final LongAdder compressSkipped = Metrics.counter("compressSkipped"); // не сжались (отправлены как есть)
+    private static final LongAdder decompressedFrames = Metrics.counter("decompressedFrames"); // распаковано сообщений
+    private static final LongAdder decompressNanos = Metrics.counter("decompressNanos"); // время распаковки
+
+    private static final ThreadLocal<Codec> codec = ThreadLocal.withInitial(Codec::new);
+
+    private FrameCompression() {
+    }
+
+    // Настраивает сжатие (threshold <= 0 и level вне 0..9 игнорируются)
+    public static void configure(boolean enable, int minSize, int compressionLevel) {
+        enabled = enable;
+        if (minSize > 0)
+            threshold = minSize;
+        if (compressionLevel >= Deflater.NO_COMPRESSION && compressionLevel <= Deflater.BEST_COMPRESSION)
+            level = compressionLevel;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Мин. размер сообщения для сжатия (байт)
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    // Признак сжатого сообщения по полю типа
+    public static boolean isCompressed(int packetType) {
+        return (packetType & FLAG) != 0;
+    }
+
+    // Создаёт управляющее сообщение согласования с кодом алгоритма
+    public static PacketBase newControlPacket(int codecId) {
+        PacketBase packetBase = new PacketBase();
+        packetBase.setPacketType(CONTROL_TYPE);
+        packetBase.setPacketBody(ByteBuffer.allocate(4).putInt(codecId).array());
+        return packetBase;
+    }
+
+    // Код алгоритма из тела управляющего сообщения [position, position + frameLength)
+    public static int readControlCodec(ByteBuffer buffer, int position, int frameLength) {
+        if (frameLength < PacketBase.HEADER_SIZE + 4)
+            return CODEC_NONE;
+        return buffer.getInt(position + PacketBase.HEADER_SIZE);
+    }
+
+    // Сжимает сообщение (позиция..лимит буфера frame). Возвращает новый буфер или null,
+    // если сообщение меньше порога или не сжимается. Исходный буфер не освобождается
+    public static PooledBuffer compress(PooledBuffer frame) {
+        ByteBuffer source = frame.buffer();
+        int frameLength = source.remaining();
+        if (frameLength < threshold)
+            return null;
+        int position = source.position();
+        int bodyLength = frameLength - PacketBase.HEADER_SIZE;
+        int packetType = source.getInt(position + PacketBase.LENGTH_SIZE);
+        int maxOutput = bodyLength - RAW_LENGTH_SIZE - 1; // сжатое тело должно быть меньше исходного
+        if (maxOutput <= 0 || isCompressed(packetType) || packetType == CONTROL_TYPE)
+            return null;
+
+        long start = System.nanoTime();
+        Codec c = codec.get();
+        byte[] input = c.input(bodyLength);
+        ByteBuffer body = source.duplicate();
+        body.position(position + PacketBase.HEADER_SIZE);
+        body.get(input, 0, bodyLength);
+
+        byte[] output = c.output(maxOutput + 1);
+        Deflater deflater = c.deflater;
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(input, 0, bodyLength);
+        deflater.finish();
+        int compressedLength = deflater.deflate(output, 0, maxOutput + 1);
+        if (!deflater.finished() || compressedLength > maxOutput) { // не сжалось, отправляем как есть
+            compressSkipped.increment();
+            return null;
+        }
+
+        PooledBuffer result = BufferPool.acquire(PacketBase.HEADER_SIZE + RAW_LENGTH_SIZE + compressedLength);
+        ByteBuffer target = result.buffer();
+        target.putInt(RAW_LENGTH_SIZE + compressedLength + PacketBase.TYPE_SIZE); // длинна сообщения
+        target.putInt(packetType | FLAG); // тип сообщения с признаком сжатия
+        target.putInt(bodyLength); // исходная длинна тела
+        target.put(output, 0, compressedLength);
+        target.flip();
+
+        compressedFrames.increment();
+        compressRawBytes.add(frameLength);
+        compressBytes.add(target.remaining());
+        compressNanos.add(System.nanoTime() - start);
+        return result;
+    }
+
+    // Распаковывает сжатое сообщение [position, position + frameLength) буфера buffer в новый буфер пула
+    // (исходный тип, позиция - начало сообщения). Тело больше maxBodySize считается ошибкой
+    public static PooledBuffer decompress(ByteBuffer buffer, int position, int frameLength, int maxBodySize)
+            throws IOException {
+        int compressedLength = frameLength - PacketBase.HEADER_SIZE - RAW_LENGTH_SIZE;
+        if (compressedLength <= 0)
+            throw new IOException("Compressed packet is too small: " + frameLength);
+        int packetType = buffer.getInt(position + PacketBase.LENGTH_SIZE) & ~FLAG;
+        int bodyLength = buffer.getInt(position + PacketBase.HEADER_SIZE);
+        if (bodyLength < 0 || bodyLength > maxBodySize)
+            throw new IOException("Wrong decompressed packet size: " + bodyLength);
+
+        long start = System.nanoTime();
+        Codec c = codec.get();
+        byte[] input = c.input(compressedLength);
+        ByteBuffer body = buffer.duplicate();
+        body.position(position + PacketBase.HEADER_SIZE + RAW_LENGTH_SIZE);
+        body.get(input, 0, compressedLength);
+        byte[] output = c.output(bodyLength + 1); // лишний байт - чтобы обнаружить тело больше заявленного
+
+        Inflater inflater = c.inflater;
+        inflater.reset();
+        inflater.setInput(input, 0, compressedLength);
+        int inflated;
+        try {
+            inflated = inflater.inflate(output, 0, bodyLength + 1);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed packet", e);
+        }
+        if (inflated != bodyLength || !inflater.finished())
+            throw new IOException("Wrong decompressed packet size: " + inflated + " (expected " + bodyLength + ")");
+
+        PooledBuffer result = BufferPool.acquire(PacketBase.HEADER_SIZE + bodyLength);
+        ByteBuffer target = result.buffer();
+        target.putInt(bodyLength + PacketBase.TYPE_SIZE);
+        target.putInt(packetType);
+        target.put(output, 0, bodyLength);
+        target.flip();
+
+        decompressedFrames.increment();
+        decompressNanos.add(System.nanoTime() - start);
+        return result;
+    }
+
+    // Статистика сжатия: коэффициент и затраты процессора на сообщение
+    public static String getStats() {
+        long frames = compressedFrames.sum();
+        long raw = compressRawBytes.sum();
+        long unpacked = decompressedFrames.sum();
+        return String.format("Compression: frames=%d ratio=%.2f cpu=%.1f us/frame skipped=%d, " +
+                        "decompression: frames=%d cpu=%.1f us/frame",
+                frames, raw > 0 ? (double) compressBytes.sum() / raw : 1.0,
+                frames > 0 ? compressNanos.sum() / 1000.0 / frames : 0.0, compressSkipped.sum(),
+                unpacked, unpacked > 0 ? decompressNanos.sum() / 1000.0 / unpacked : 0.0);
+    }
+
+    // Кодеки и рабочие массивы потока
+    private static final class Codec {
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final Inflater inflater = new Inflater();
+        private byte[] input = new byte[1024];
+        private byte[] output = new byte[1024];
+
+        byte[] input(int size) {
+            if (input.length < size)
+                input = new byte[Integer.highestOneBit(size - 1) << 1];
+            return input;
+        }
+
+        byte[] output(int size) {
+            if (output.length < size)
+                output = new byte[Integer.highestOneBit(size - 1) << 1];
+            return output;
+        }
+    }
+}
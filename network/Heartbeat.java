@@ -0,0 +1,105 @@
+package network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+// Проверка связи (ping/pong) и оценка времени оборота (RTT) подключения.
+// PING_TYPE и PONG_TYPE - управляющие сообщения, тело - long, время отправки ping (System.nanoTime() отправителя).
+// Получатель ping сразу отвечает pong с тем же телом. Сообщения обрабатываются при чтении канала
+// (ChannelReader/ClientBase) и не попадают в очередь вх. сообщений и в обработку клиента.
+// Экземпляр хранит оценку RTT одного подключения: сглаженное RTT и его отклонение (jitter),
+// как в RFC 6298: srtt = 7/8 srtt + 1/8 r, rttvar = 3/4 rttvar + 1/4 |srtt - r|
+public final class Heartbeat {
+    public static final int PING_TYPE = 6; // ИД типа сообщения ping
+    public static final int PONG_TYPE = 7; // ИД типа сообщения pong
+    public static final int BODY_SIZE = 8; // размер тела (время отправки ping)
+
+    private static volatile long interval = 0; // интервал отправки ping сервером, мс (0 - не отправляются)
+
+    public static final LongAdder pingsOut = Metrics.counter("pingsOut"); // отправлено ping
+    public static final LongAdder pingsIn = Metrics.counter("pingsIn"); // получено ping (отвечено pong)
+    public static final LongAdder pongsIn = Metrics.counter("pongsIn"); // получено pong (замеров RTT)
+
+    // оценка RTT (нс). Обновляется потоком чтения канала, читается любым потоком
+    private volatile long smoothedRtt = -1; // сглаженное RTT (-1 - замеров не было)
+    private volatile long rttVariance = 0; // сглаженное отклонение RTT (jitter)
+    private volatile long lastRtt = -1; // последний замер
+    private volatile long samples = 0; // кол-во замеров
+
+    // Устанавливает интервал отправки ping сервером, мс (0 - не отправляются)
+    public static void configure(long intervalMillis) {
+        interval = Math.max(intervalMillis, 0);
+    }
+
+    // Интервал отправки ping, мс
+    public static long getInterval() {
+        return interval;
+    }
+
+    public static boolean isEnabled() {
+        return interval > 0;
+    }
+
+    // Создаёт сообщение ping или pong с временем отправки ping
+    public static PacketBase newPacket(int type, long timestamp) {
+        PacketBase packetBase = new PacketBase();
+        packetBase.setPacketType(type);
+        packetBase.setPacketBody(ByteBuffer.allocate(BODY_SIZE).putLong(timestamp).array());
+        return packetBase;
+    }
+
+    // Время отправки ping из тела сообщения [position, position + frameLength)
+    public static long readTimestamp(ByteBuffer buffer, int position, int frameLength) throws IOException {
+        if (frameLength < PacketBase.HEADER_SIZE + BODY_SIZE)
+            throw new IOException("Wrong heartbeat size: " + frameLength);
+        return buffer.getLong(position + PacketBase.HEADER_SIZE);
+    }
+
+    // Учитывает pong на ping, отправленный в момент timestamp
+    public void onPong(long timestamp, long now) {
+        long rtt = now - timestamp;
+        if (rtt < 0)
+            return; // не наш ping
+        pongsIn.increment();
+        this.lastRtt = rtt;
+        long srtt = this.smoothedRtt;
+        if (srtt < 0) {
+            this.rttVariance = rtt / 2;
+            this.smoothedRtt = rtt;
+        }
+        else {
+            this.rttVariance = (3 * this.rttVariance + Math.abs(srtt - rtt)) / 4;
+            this.smoothedRtt = (7 * srtt + rtt) / 8;
+        }
+        this.samples++;
+    }
+
+    // Сглаженное RTT, нс (-1 - замеров не было)
+    public long getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    // Сглаженное отклонение RTT (jitter), нс
+    public long getJitter() {
+        return rttVariance;
+    }
+
+    // Последний замер RTT, нс (-1 - замеров не было)
+    public long getLastRtt() {
+        return lastRtt;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        long srtt = this.smoothedRtt;
+        if (srtt < 0)
+            return "rtt: n/a";
+        return String.format("rtt: %.3f ms, jitter: %.3f ms, last: %.3f ms, samples: %d",
+                srtt / 1e6, rttVariance / 1e6, lastRtt / 1e6, samples);
+    }
+}
@@ -0,0 +1,202 @@
+package network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Реестр метрик сетевого стека.
+// Счётчики - LongAdder (распределены по ячейкам, обновление из разных потоков без общей блокировки),
+// датчики (gauge) - функции, значение вычисляется при чтении.
+// Метрики доступны через консоль (show stats) и JMX (network:type=Metrics)
+public final class Metrics {
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class.getName());
+
+    private static final Map<String, LongAdder> counters = new LinkedHashMap<>(); // счётчики по имени
+    private static final Map<String, LongSupplier> gauges = new LinkedHashMap<>(); // датчики по имени
+
+    // счётчики сетевого стека
+    public static final LongAdder bytesIn = counter("bytesIn"); // принято байт
+    public static final LongAdder bytesOut = counter("bytesOut"); // отправлено байт
+    public static final LongAdder packetsIn = counter("packetsIn"); // принято сообщений
+    public static final LongAdder packetsOut = counter("packetsOut"); // отправлено сообщений
+    public static final LongAdder batchesIn = counter("batchesIn"); // принято пакетных сообщений
+    public static final LongAdder batchesOut = counter("batchesOut"); // отправлено пакетных сообщений
+    public static final LongAdder chunksIn = counter("chunksIn"); // принято частей потоковых сообщений
+    public static final LongAdder streamsIn = counter("streamsIn"); // принято потоковых сообщений
+    public static final LongAdder filesSent = counter("filesSent"); // отправлено файлов
+    public static final LongAdder fileBytesOut = counter("fileBytesOut"); // отправлено байт файлов (transferTo)
+    public static final LongAdder readCalls = counter("readCalls"); // вызовов read у канала
+    public static final LongAdder writeCalls = counter("writeCalls"); // вызовов write у канала
+    public static final LongAdder partialWrites = counter("partialWrites"); // записей, после которых остались данные
+    public static final LongAdder decodeErrors = counter("decodeErrors"); // ошибок разбора сообщений
+    public static final LongAdder readSuspends = counter("readSuspends"); // приостановок чтения (переполнена очередь отправки)
+    public static final LongAdder readThrottles = counter("readThrottles"); // приостановок чтения (превышен лимит скорости клиента)
+    public static final LongAdder readThrottleNanos = counter("readThrottleNanos"); // суммарное время приостановок по лимиту
+    public static final LongAdder acceptThrottles = counter("acceptThrottles"); // приостановок приёма подключений (лимит скорости)
+    public static final LongAdder connectionsAccepted = counter("connectionsAccepted"); // принято подключений
+    public static final LongAdder connectionsClosed = counter("connectionsClosed"); // закрыто подключений
+    public static final LongAdder tasksExecuted = counter("tasksExecuted"); // выполнено задач обработки
+    public static final LongAdder taskWaitNanos = counter("taskWaitNanos"); // суммарное ожидание задач в очереди исполнителя
+
+    private static Map<String, Long> lastSnapshot = null; // значения счётчиков при предыдущем выводе статистики
+    private static long lastSnapshotTime = System.nanoTime(); // время предыдущего вывода статистики
+
+    static {
+        gauge("pendingOutputBytes", ChannelWriter::getTotalPendingBytes);
+        gauge("buffersInUse", BufferPool::getActiveCount);
+    }
+
+    private Metrics() {
+    }
+
+    // Регистрирует счётчик (повторная регистрация возвращает существующий)
+    public static synchronized LongAdder counter(String name) {
+        LongAdder counter = counters.get(name);
+        if(counter == null) {
+            counter = new LongAdder();
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    // Регистрирует датчик (повторная регистрация заменяет функцию)
+    public static synchronized void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    // Текущее значение метрики по имени (null - метрика не найдена)
+    public static synchronized Long getValue(String name) {
+        LongAdder counter = counters.get(name);
+        if(counter != null)
+            return counter.sum();
+        LongSupplier gauge = gauges.get(name);
+        if(gauge != null)
+            return gauge.getAsLong();
+        return null;
+    }
+
+    // Текущие значения счётчиков
+    public static synchronized Map<String, Long> getCounters() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for(Map.Entry<String, LongAdder> entry : counters.entrySet())
+            result.put(entry.getKey(), entry.getValue().sum());
+        return result;
+    }
+
+    // Текущие значения датчиков
+    public static synchronized Map<String, Long> getGauges() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for(Map.Entry<String, LongSupplier> entry : gauges.entrySet())
+            result.put(entry.getKey(), entry.getValue().getAsLong());
+        return result;
+    }
+
+    // Статистика в виде строки: значения счётчиков и их скорость (в секунду)
+    // с момента предыдущего вызова (для первого вызова - с момента запуска)
+    public static synchronized String getStats() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastSnapshotTime, 1) / 1e9;
+        Map<String, Long> snapshot = getCounters();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-22s %16s %14s%n", "Counter", "total", "per second"));
+        for(Map.Entry<String, Long> entry : snapshot.entrySet()) {
+            // счётчик, зарегистрированный после предыдущего вызова, считается с нуля
+            long previous = lastSnapshot != null ? lastSnapshot.getOrDefault(entry.getKey(), 0L) : 0;
+            sb.append(String.format("%-22s %16d %14.1f%n", entry.getKey(), entry.getValue(),
+                    (entry.getValue() - previous) / seconds));
+        }
+
+        long tasks = snapshot.get("tasksExecuted") - (lastSnapshot != null ? lastSnapshot.getOrDefault("tasksExecuted", 0L) : 0);
+        long wait = snapshot.get("taskWaitNanos") - (lastSnapshot != null ? lastSnapshot.getOrDefault("taskWaitNanos", 0L) : 0);
+        sb.append(String.format("%-22s %16.1f%n", "avgTaskWaitMicros", tasks > 0 ? wait / 1000.0 / tasks : 0.0));
+
+        sb.append(String.format("%-22s %16s%n", "Gauge", "value"));
+        for(Map.Entry<String, Long> entry : getGauges().entrySet())
+            sb.append(String.format("%-22s %16d%n", entry.getKey(), entry.getValue()));
+        sb.append(String.format("Interval: %.1f s", seconds));
+
+        lastSnapshot = snapshot;
+        lastSnapshotTime = now;
+        return sb.toString();
+    }
+
+    // Регистрирует метрики в MBean сервере платформы
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new MetricsMBean(), new ObjectName("network:type=Metrics"));
+            logger.debug("Metrics MBean registered");
+        } catch (InstanceAlreadyExistsException e) {
+            logger.debug("Metrics MBean already registered");
+        } catch (JMException e) {
+            logger.error("Metrics MBean registration error: ", e);
+        }
+    }
+
+    // MBean с атрибутами по именам метрик (только чтение)
+    private static class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long value = Metrics.getValue(attribute);
+            if(value == null)
+                throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList result = new AttributeList();
+            for(String attribute : attributes) {
+                Long value = Metrics.getValue(attribute);
+                if(value != null)
+                    result.add(new Attribute(attribute, value));
+            }
+            return result;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] attributes;
+            synchronized (Metrics.class) {
+                attributes = new MBeanAttributeInfo[counters.size() + gauges.size()];
+                int i = 0;
+                for(String name : counters.keySet())
+                    attributes[i++] = new MBeanAttributeInfo(name, "long", "Counter " + name, true, false, false);
+                for(String name : gauges.keySet())
+                    attributes[i++] = new MBeanAttributeInfo(name, "long", "Gauge " + name, true, false, false);
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Network stack metrics", attributes, null, null, null);
+        }
+    }
+}
@@ -3,10 +3,9 @@ package network;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 // Экземпляет сообщения
 public class PacketBase implements iPacket {
@@ -22,6 +21,7 @@ public class PacketBase implements iPacket {
     private int packetLength = 0; // длинна тела сообщения
     private int packetType = 0; // тип сообщения
     private byte[] packetBody = null; // тело сообщения
+    private PooledBuffer frameBuffer = null; // закодированное сообщение (заголовок + тело) в буфере из пула
 
     public ByteBuffer readBuffer = null; // буфер для сбора сообщения по частям
 
@@ -30,6 +30,13 @@ public class PacketBase implements iPacket {
         this.MAX_PACKET_SIZE = 0;
     }
 
+    // Конструктор используется для сообщения, считанного из канала в буфер пула.
+    // Сообщение становится владельцем буфера (освобождается через release())
+    public PacketBase(PooledBuffer frameBuffer) {
+        this.MAX_PACKET_SIZE = 0;
+        this.setFrame(frameBuffer);
+    }
+
     // Конструктор используется для создание нового сообщения и считывания из канала
     public PacketBase(int bufferSize) throws IOException {
         if(bufferSize > 0 && bufferSize <= Integer.MAX_VALUE) { // проверка валидности размера буфера
@@ -50,14 +57,55 @@ public class PacketBase implements iPacket {
         return packetType;
     }
 
-    // геттер ТЕЛА сообщения
+    // сеттер ТИПа сообщения (для типизированных сообщений)
+    protected void setPacketType(int packetType) {
+        this.packetType = packetType;
+    }
+
+    // Делает сообщение владельцем буфера принятого сообщения (заголовок + тело)
+    void setFrame(PooledBuffer frameBuffer) {
+        this.release();
+        this.frameBuffer = frameBuffer;
+        this.packetBody = null;
+        ByteBuffer frame = frameBuffer.buffer();
+        this.packetLength = frame.getInt(frame.position());
+        this.packetType = frame.getInt(frame.position() + LENGTH_SIZE);
+    }
+
+    // Буфер сообщения (null - сообщение не закодировано)
+    PooledBuffer getFrameBuffer() {
+        return this.frameBuffer;
+    }
+
+    // Возвращает тело сообщения из буфера пула без копирования (позиция - начало тела, лимит - конец).
+    // null - сообщение не закодировано в буфер
+    protected ByteBuffer getPacketBodyBuffer() {
+        if(this.frameBuffer == null)
+            return null;
+        ByteBuffer body = this.frameBuffer.buffer().duplicate();
+        body.position(body.position() + HEADER_SIZE);
+        return body;
+    }
+
+    // геттер ТЕЛА сообщения.
+    // Для сообщения из буфера пула тело копируется в массив при первом обращении
     public byte[] getPacketBody() {
+        if(this.packetBody == null && this.frameBuffer != null) {
+            ByteBuffer frame = this.frameBuffer.buffer().duplicate();
+            frame.position(frame.position() + HEADER_SIZE);
+            byte[] body = new byte[this.packetLength - TYPE_SIZE];
+            frame.get(body);
+            this.packetBody = body;
+        }
         return packetBody;
     }
 
     // сеттер ТЕЛА сообщения
     public void setPacketBody(byte[] data) {
+        this.release(); // закодированное сообщение больше не актуально
         this.packetBody = data;
+        if(data != null)
+            this.packetLength = data.length + TYPE_SIZE;
     }
 
     @Override
@@ -70,10 +118,29 @@ public class PacketBase implements iPacket {
 
     }
 
+    @Override
+    public void writePacketBody(ByteBuffer buffer) {
+        byte[] body = this.getPacketBody();
+        if(body != null)
+            buffer.put(body);
+    }
+
+    @Override
+    public void readPacketBody(ByteBuffer buffer) {
+
+    }
+
+    // Макс. размер тела сообщения при кодировании через writePacketBody(ByteBuffer)
+    protected int getMaxPacketBodySize() {
+        byte[] body = this.getPacketBody();
+        return body != null ? body.length : 0;
+    }
+
     // Метод заполняет поля сообщения
     public void setPacket(int type, byte[] messageBody)
             throws IOException {
         if(type >= 0 && messageBody != null) {
+            this.release(); // закодированное сообщение больше не актуально
             this.packetType = type;
             this.packetBody = messageBody;
             this.packetLength = this.packetBody.length + TYPE_SIZE;
@@ -83,13 +150,54 @@ public class PacketBase implements iPacket {
     }
 
     public String getPacketBodyStr() {
-        String result = null;
-        try {
-            result = new String(this.packetBody, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            logger.debug("Exception: ", e);
+        byte[] body = this.getPacketBody();
+        return body != null ? new String(body, StandardCharsets.UTF_8) : null;
+    }
+
+    // Размер тела сообщения (байт)
+    public int getPacketBodySize() {
+        if(this.frameBuffer != null)
+            return this.packetLength - TYPE_SIZE;
+        return this.packetBody != null ? this.packetBody.length : 0;
+    }
+
+    // Байт тела сообщения по индексу (без копирования тела из буфера)
+    private byte getBodyByte(int index) {
+        if(this.frameBuffer != null) {
+            ByteBuffer frame = this.frameBuffer.buffer();
+            return frame.get(frame.position() + HEADER_SIZE + index);
         }
-        return result;
+        return this.packetBody[index];
+    }
+
+    // Сравнивает тело сообщения с байтами (без построения строки)
+    public boolean bodyEquals(byte[] value) {
+        return this.getPacketBodySize() == value.length && this.bodyStartsWith(value);
+    }
+
+    // Проверяет, начинается ли тело сообщения с переданных байт
+    public boolean bodyStartsWith(byte[] prefix) {
+        if(this.getPacketBodySize() < prefix.length)
+            return false;
+        for(int i = 0; i < prefix.length; i++) {
+            if(this.getBodyByte(i) != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    // Сравнивает тело сообщения с ASCII командой без учёта регистра (команда - в нижнем регистре)
+    public boolean bodyEqualsIgnoreCase(byte[] lowerCaseAscii) {
+        if(this.getPacketBodySize() != lowerCaseAscii.length)
+            return false;
+        for(int i = 0; i < lowerCaseAscii.length; i++) {
+            byte b = this.getBodyByte(i);
+            if(b >= 'A' && b <= 'Z')
+                b += 'a' - 'A';
+            if(b != lowerCaseAscii[i])
+                return false;
+        }
+        return true;
     }
 
     // метод читает данные из readBuffer в соответствующие поля класса
@@ -117,37 +225,68 @@ public class PacketBase implements iPacket {
 
     // преобразовываем PacketBase в ByteBuffer
     public ByteBuffer getByteBufferMessage() {
-        ByteBuffer writeBuffer = ByteBuffer.allocate(HEADER_SIZE + this.packetLength);
-        byte[] length = ByteBuffer.allocate(LENGTH_SIZE).putInt(this.packetLength).array(); // формирует byte[] из длинны сообщения
-        byte[] type = ByteBuffer.allocate(TYPE_SIZE).putInt(this.packetType).array(); // формирует byte[] из типа сообщения
-
-        writeBuffer.clear(); // очищаем буфер
-        writeBuffer.put(length); // записываем длинну сообщения
-        writeBuffer.put(type); // записываем тип сообщения
-        writeBuffer.put(this.packetBody); // записываем сообщение
+        ByteBuffer writeBuffer = ByteBuffer.allocate(LENGTH_SIZE + this.packetLength);
+
+        writeBuffer.putInt(this.packetLength); // записываем длинну сообщения
+        writeBuffer.putInt(this.packetType); // записываем тип сообщения
+        writeBuffer.put(this.getPacketBody()); // записываем сообщение
         writeBuffer.flip(); // выставляем размер буфера в соовествии с размером записанных данных
 
         return writeBuffer;
     }
 
+    // Возвращает закодированное сообщение в буфере пула, увеличивая счётчик ссылок.
+    // Сообщение кодируется только если ещё не было закодировано (или было изменено).
+    // Получатель должен вызвать release() у буфера после использования
+    public PooledBuffer retainFrame() {
+        if(this.frameBuffer == null && this.packetBody != null) {
+            PooledBuffer frame = BufferPool.acquire(LENGTH_SIZE + this.packetLength);
+            ByteBuffer writeBuffer = frame.buffer();
+            writeBuffer.putInt(this.packetLength); // записываем длинну сообщения
+            writeBuffer.putInt(this.packetType); // записываем тип сообщения
+            writeBuffer.put(this.packetBody); // записываем сообщение
+            writeBuffer.flip();
+            this.frameBuffer = frame;
+        }
+        else if(this.frameBuffer == null) {
+            // тело не закодировано в массив: кодируем поля сообщения прямо в буфер пула
+            PooledBuffer frame = BufferPool.acquire(HEADER_SIZE + this.getMaxPacketBodySize());
+            ByteBuffer writeBuffer = frame.buffer();
+            writeBuffer.position(HEADER_SIZE);
+            this.writePacketBody(writeBuffer);
+            this.packetLength = writeBuffer.position() - LENGTH_SIZE;
+            writeBuffer.putInt(0, this.packetLength); // записываем длинну сообщения
+            writeBuffer.putInt(LENGTH_SIZE, this.packetType); // записываем тип сообщения
+            writeBuffer.flip();
+            this.frameBuffer = frame;
+        }
+        return this.frameBuffer.retain();
+    }
+
+    // Освобождает буфер пула, которым владеет сообщение
+    public void release() {
+        if(this.frameBuffer != null) {
+            this.frameBuffer.release();
+            this.frameBuffer = null;
+        }
+    }
+
     // преобразовываем PacketBase в byte[]
     public byte[] getByteArrayMessage() throws IOException {
-        if(this.packetLength <= 0 || this.packetBody == null) {
+        if(this.packetLength <= 0 || this.getPacketBody() == null) {
             throw new IOException("Invalid message");
         }
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        baos.write(ByteBuffer.allocate(LENGTH_SIZE).putInt(this.packetLength).array());
-        baos.write(ByteBuffer.allocate(TYPE_SIZE).putInt(this.packetType).array());
-        baos.write(this.packetBody);
-        return baos.toByteArray();
+        return this.getByteBufferMessage().array();
     }
 
     // очищаем поля класса
     public void clear() {
+        this.release();
         this.packetLength = 0;
         this.packetType = 0;
         this.packetBody = null;
-        this.readBuffer.clear();
+        if(this.readBuffer != null)
+            this.readBuffer.clear();
     }
 
     public PacketBase clone() {
@@ -155,19 +294,13 @@ public class PacketBase implements iPacket {
         newPacketBase.packetLength = this.packetLength;
         newPacketBase.packetType = this.packetType;
         newPacketBase.packetBody = this.packetBody;
+        if(this.frameBuffer != null)
+            newPacketBase.frameBuffer = this.frameBuffer.retain();
         return newPacketBase;
     }
 
     @Override
     public String toString() {
-        String result = "";
-        try {
-            result = new String("[" + Integer.toString(this.packetLength) + ",");
-            result += new String(Integer.toString(this.packetType) + "] ");
-            result += new String(this.packetBody, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            logger.debug("Exception: ", e);
-        }
-        return result;
+        return "[" + this.packetLength + "," + this.packetType + "] " + this.getPacketBodyStr();
     }
 }
@@ -0,0 +1,105 @@
+package network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+
+// Пакетное сообщение (batch): одно сообщение типа TYPE, тело которого - N обычных сообщений подряд
+// ([длина][тип][тело][длина][тип][тело]...).
+// Приём: вложенные сообщения отдаются срезами буфера без копирования (unpack).
+// Отправка: мелкие ответы копируются в общий буфер до заполнения бюджета по размеру (add/finish).
+// Пакетные сообщения экономят системные вызовы и задачи обработки при большом потоке мелких сообщений
+public final class PacketBatch {
+    public static final int TYPE = 1; // ИД типа пакетного сообщения
+
+    private final int maxFrameSize; // макс. размер пакетного сообщения с заголовком
+    private PooledBuffer batchBuffer = null; // собираемое пакетное сообщение
+    private PooledBuffer singleFrame = null; // единственное сообщение пакета (отправляется без упаковки)
+    private int count = 0; // кол-во сообщений в пакете
+
+    public PacketBatch(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    // Разбирает пакетное сообщение [position, position + frameLength) буфера frame на вложенные сообщения
+    // и добавляет их в очередь. Возвращает кол-во сообщений
+    public static int unpack(PooledBuffer frame, int position, int frameLength, Queue<PacketBase> queue)
+            throws IOException {
+        ByteBuffer buffer = frame.buffer();
+        int end = position + frameLength;
+        int cursor = position + PacketBase.HEADER_SIZE;
+        int count = 0;
+        while (cursor < end) {
+            if (end - cursor < PacketBase.HEADER_SIZE)
+                throw new IOException("Truncated sub-packet header in batch");
+            int messageLength = buffer.getInt(cursor);
+            int subLength = PacketBase.LENGTH_SIZE + messageLength;
+            if (messageLength < PacketBase.TYPE_SIZE || subLength > end - cursor)
+                throw new IOException("Wrong sub-packet size in batch: " + messageLength);
+            if (buffer.getInt(cursor + PacketBase.LENGTH_SIZE) == TYPE)
+                throw new IOException("Nested batch is not allowed");
+            queue.add(PacketFactory.createPacket(frame.retainedSlice(cursor, subLength)));
+            cursor += subLength;
+            count++;
+        }
+        return count;
+    }
+
+    // Добавляет закодированное сообщение в пакет. Пакет забирает ссылку на буфер сообщения.
+    // Возвращает false, если сообщение не помещается (пакет нужно завершить через finish())
+    public boolean add(PooledBuffer frame) {
+        int size = frame.buffer().remaining();
+        if (this.count == 0) {
+            this.singleFrame = frame;
+            this.count = 1;
+            return true;
+        }
+        if (PacketBase.HEADER_SIZE + this.size() + size > this.maxFrameSize)
+            return false;
+
+        if (this.batchBuffer == null) {
+            // второе сообщение: начинаем пакет и переносим в него первое
+            this.batchBuffer = BufferPool.acquire(this.maxFrameSize);
+            ByteBuffer buffer = this.batchBuffer.buffer();
+            buffer.position(PacketBase.HEADER_SIZE);
+            buffer.put(this.singleFrame.buffer().duplicate());
+            this.singleFrame.release();
+            this.singleFrame = null;
+        }
+        this.batchBuffer.buffer().put(frame.buffer().duplicate());
+        frame.release();
+        this.count++;
+        return true;
+    }
+
+    // Кол-во сообщений в пакете
+    public int getCount() {
+        return this.count;
+    }
+
+    // Размер вложенных сообщений (байт)
+    private int size() {
+        if (this.batchBuffer != null)
+            return this.batchBuffer.buffer().position() - PacketBase.HEADER_SIZE;
+        return this.singleFrame != null ? this.singleFrame.buffer().remaining() : 0;
+    }
+
+    // Завершает пакет и возвращает буфер для отправки (единственное сообщение - без упаковки).
+    // null - пакет пуст. После вызова пакет готов к повторному использованию
+    public PooledBuffer finish() {
+        PooledBuffer result;
+        if (this.batchBuffer != null) {
+            ByteBuffer buffer = this.batchBuffer.buffer();
+            buffer.putInt(0, buffer.position() - PacketBase.LENGTH_SIZE); // длинна сообщения
+            buffer.putInt(PacketBase.LENGTH_SIZE, TYPE); // тип сообщения
+            buffer.flip();
+            result = this.batchBuffer;
+        }
+        else
+            result = this.singleFrame;
+        this.batchBuffer = null;
+        this.singleFrame = null;
+        this.count = 0;
+        return result;
+    }
+}
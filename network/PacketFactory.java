@@ -1,37 +1,96 @@
 package network;
 
 import network.packets.Packet100Message;
+import network.packets.PacketChunk;
+import network.packets.PacketTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
+// Реестр типов сообщений.
+// Типы регистрируются через ServiceLoader (PacketProvider) или register(),
+// поставщики хранятся в массиве по ИД типа (поиск без HashMap)
 public class PacketFactory {
-    //Ассоциативный массив: класс сообщения => идентификатор сообщения
-    private static final Map<Class<? extends PacketBase>, Integer> idMap = new HashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(PacketFactory.class.getName());
+
+    public static final int MAX_PACKET_TYPE = 1023; // макс. ИД типа сообщения
+
+    // Массив: ИД сообщения => поставщик сообщения
+    private static final PacketProvider[] providers = new PacketProvider[MAX_PACKET_TYPE + 1];
 
     static {
-        idMap.put(Packet100Message.class, Packet100Message.type);
+        register(new Packet100Message.Provider()); // встроенные типы
+        register(new PacketChunk.Provider());
+        register(new PacketTopic.Provider());
+        try {
+            for (PacketProvider provider : ServiceLoader.load(PacketProvider.class))
+                register(provider);
+        } catch (ServiceConfigurationError e) {
+            logger.error("Packet provider load error: ", e);
+        }
     }
 
     private PacketFactory() {
     }
 
-    //Создает сообщение по идентификатору
-    public static PacketBase createPacket(PacketBase packet) throws IOException {
+    // Регистрирует тип сообщения. Типы нужно регистрировать до запуска сервера
+    public static synchronized void register(PacketProvider provider) {
+        int type = provider.getPacketType();
+        if(type < 0 || type > MAX_PACKET_TYPE)
+            throw new IllegalArgumentException("Packet type out of range: " + type);
+        PacketProvider current = providers[type];
+        if(current != null && current.getClass() != provider.getClass())
+            logger.warn("Packet type {} is already registered by {}. Replaced by {}",
+                    type, current.getClass().getName(), provider.getClass().getName());
+        providers[type] = provider;
+    }
 
-        switch (packet.getPacketType()) {
-            case Packet100Message.type:
-                return new Packet100Message();
+    // Возвращает поставщика по ИД типа (null - тип не зарегистрирован)
+    public static PacketProvider getProvider(int type) {
+        if(type < 0 || type > MAX_PACKET_TYPE)
+            return null;
+        return providers[type];
+    }
 
-            default:
-                throw new IOException("Unknown message type " + packet.getPacketType());
+    //Создает сообщение по идентификатору. Поля сообщения декодируются из тела переданного сообщения
+    public static PacketBase createPacket(PacketBase packet) throws IOException {
+        PacketProvider provider = getProvider(packet.getPacketType());
+        if(provider == null)
+            throw new IOException("Unknown message type " + packet.getPacketType());
+
+        PacketBase result = provider.newPacket();
+        PooledBuffer frame = packet.getFrameBuffer();
+        if(frame != null) {
+            result.setFrame(frame.retain());
+            result.readPacketBody(result.getPacketBodyBuffer());
+        }
+        else {
+            result.setPacket(packet.getPacketType(), packet.getPacketBody());
+            result.readPacketBody(ByteBuffer.wrap(packet.getPacketBody()));
         }
+        return result;
+    }
+
+    // Создаёт сообщение из принятого буфера (сообщение становится владельцем буфера).
+    // Поля зарегистрированных типов декодируются прямо из буфера,
+    // для незарегистрированных типов возвращается PacketBase
+    public static PacketBase createPacket(PooledBuffer frame) {
+        ByteBuffer buffer = frame.buffer();
+        PacketProvider provider = getProvider(buffer.getInt(buffer.position() + PacketBase.LENGTH_SIZE));
+        if(provider == null)
+            return new PacketBase(frame);
 
+        PacketBase result = provider.newPacket();
+        result.setFrame(frame);
+        result.readPacketBody(result.getPacketBodyBuffer());
+        return result;
     }
 
     public static int getPacketType(final PacketBase packetBase) {
-        Integer type = idMap.get(packetBase.getClass());
-        return type.intValue();
+        return packetBase.getPacketType();
     }
 }
@@ -0,0 +1,76 @@
+package network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Классы приоритета (полосы) сообщений для очереди исполнителя обработки.
+//   CONTROL     - управляющие сообщения (команда quit и типы, назначенные в настройках)
+//   INTERACTIVE - обычные сообщения (по умолчанию для всех типов)
+//   BULK        - массовые данные (части потоковых сообщений)
+// Задача обработки клиента попадает в полосу самого приоритетного из ожидающих сообщений клиента:
+// порядок обработки сообщений одного клиента не меняется, меняется только очередь клиентов
+public final class PacketLanes {
+    private static final Logger logger = LoggerFactory.getLogger(PacketLanes.class.getName());
+
+    public static final int CONTROL = 0;
+    public static final int INTERACTIVE = 1;
+    public static final int BULK = 2;
+    public static final int LANE_COUNT = 3;
+    private static final String[] NAMES = {"control", "interactive", "bulk"};
+
+    private static final int[] lanes = new int[PacketFactory.MAX_PACKET_TYPE + 1]; // тип сообщения => полоса
+
+    static {
+        configure("3:bulk");
+    }
+
+    // Задача исполнителя с полосой приоритета
+    public interface Task extends Runnable {
+        int getLane();
+    }
+
+    private PacketLanes() {
+    }
+
+    // Назначает полосы типам сообщений: "тип:полоса,..." (полоса - имя или номер).
+    // Неуказанные типы - INTERACTIVE, ошибочные элементы пропускаются
+    public static synchronized void configure(String typeMap) {
+        for (int i = 0; i < lanes.length; i++)
+            lanes[i] = INTERACTIVE;
+        if (typeMap == null)
+            return;
+        for (String item : typeMap.split(",")) {
+            item = item.trim();
+            if (item.isEmpty())
+                continue;
+            int pos = item.indexOf(':');
+            try {
+                int type = Integer.parseInt(item.substring(0, pos).trim());
+                int lane = parseLane(item.substring(pos + 1).trim());
+                if (type < 0 || type >= lanes.length || lane < 0)
+                    throw new IllegalArgumentException();
+                lanes[type] = lane;
+            } catch (RuntimeException e) {
+                logger.warn("Wrong packet lane mapping: {}", item);
+            }
+        }
+    }
+
+    private static int parseLane(String lane) {
+        for (int i = 0; i < LANE_COUNT; i++) {
+            if (NAMES[i].equalsIgnoreCase(lane))
+                return i;
+        }
+        int number = Integer.parseInt(lane);
+        return number < LANE_COUNT ? number : -1;
+    }
+
+    // Полоса типа сообщения
+    public static int laneOf(int packetType) {
+        return packetType >= 0 && packetType < lanes.length ? lanes[packetType] : INTERACTIVE;
+    }
+
+    public static String getName(int lane) {
+        return NAMES[lane];
+    }
+}
@@ -0,0 +1,12 @@
+package network;
+
+// Поставщик типа сообщения для PacketFactory.
+// Реализации регистрируются через ServiceLoader (META-INF/services/network.PacketProvider)
+// или вызовом PacketFactory.register()
+public interface PacketProvider {
+    // ИД типа сообщения (0..PacketFactory.MAX_PACKET_TYPE)
+    int getPacketType();
+
+    // Создаёт пустой экземпляр сообщения
+    PacketBase newPacket();
+}
@@ -0,0 +1,99 @@
+package network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Буфер, выданный пулом BufferPool.
+// Имеет счётчик ссылок: каждый владелец вызывает retain() при получении и release() когда буфер больше не нужен.
+// После последнего release() буфер возвращается в пул.
+// Срез (retainedSlice) разделяет память и счётчик ссылок с исходным буфером.
+public final class PooledBuffer {
+    private final ByteBuffer buffer; // direct буфер (для среза - его часть)
+    private final int sizeClass; // индекс размерного класса в пуле (-1 - буфер вне пула)
+    private final PooledBuffer root; // буфер пула, которому принадлежит память (для среза - исходный буфер)
+    private final AtomicInteger refCnt; // счётчик ссылок (общий для буфера и его срезов)
+
+    PooledBuffer(ByteBuffer buffer, int sizeClass) {
+        this.buffer = buffer;
+        this.sizeClass = sizeClass;
+        this.root = this;
+        this.refCnt = new AtomicInteger(0);
+    }
+
+    // Конструктор среза
+    private PooledBuffer(ByteBuffer buffer, PooledBuffer root) {
+        this.buffer = buffer;
+        this.sizeClass = -1;
+        this.root = root;
+        this.refCnt = root.refCnt;
+    }
+
+    // Возвращает NIO буфер для чтения/записи
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    int getSizeClass() {
+        return sizeClass;
+    }
+
+    // Текущее кол-во ссылок на буфер
+    public int refCnt() {
+        return refCnt.get();
+    }
+
+    // Увеличивает счётчик ссылок
+    public PooledBuffer retain() {
+        for (;;) {
+            int current = refCnt.get();
+            if (current <= 0)
+                throw new IllegalStateException("Buffer already released");
+            if (refCnt.compareAndSet(current, current + 1))
+                return this;
+        }
+    }
+
+    // Уменьшает счётчик ссылок. Возвращает true, если буфер вернулся в пул
+    public boolean release() {
+        int current = refCnt.decrementAndGet();
+        if (current == 0) {
+            BufferPool.recycle(root);
+            return true;
+        }
+        if (current < 0)
+            throw new IllegalStateException("Buffer already released");
+        return false;
+    }
+
+    // Возвращает срез буфера [index, index + length) без копирования данных.
+    // Срез держит ссылку на исходный буфер, её нужно освободить через release() среза
+    public PooledBuffer retainedSlice(int index, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.clear();
+        view.position(index);
+        view.limit(index + length);
+        PooledBuffer slice = new PooledBuffer(view.slice(), root);
+        this.retain();
+        return slice;
+    }
+
+    // Возвращает read-only дубликат буфера (своя позиция и лимит, общие память и счётчик ссылок).
+    // Используется, когда одно закодированное сообщение отправляется нескольким клиентам
+    public PooledBuffer retainedReadOnlyDuplicate() {
+        PooledBuffer duplicate = new PooledBuffer(buffer.asReadOnlyBuffer(), root);
+        this.retain();
+        return duplicate;
+    }
+
+    // Подготавливает буфер к выдаче из пула
+    PooledBuffer reset(int size) {
+        refCnt.set(1);
+        buffer.clear();
+        buffer.limit(size);
+        return this;
+    }
+}
@@ -0,0 +1,54 @@
+package network;
+
+import java.nio.ByteBuffer;
+
+// Обработчик потокового сообщения (последовательность PacketChunk одного потока).
+// Вызывается в потоке обработки клиента, части одного клиента обрабатываются по порядку.
+// Данные части действительны только во время вызова onData (срез буфера чтения)
+public interface StreamHandler {
+    // Начало потока (первая часть)
+    void onStart(Client client, Stream stream);
+
+    // Данные очередной части (в том числе первой и последней)
+    void onData(Client client, Stream stream, ByteBuffer data);
+
+    // Поток завершён (aborted - передача прервана отправителем или закрыто подключение)
+    void onEnd(Client client, Stream stream, boolean aborted);
+
+    // Состояние входящего потока
+    final class Stream {
+        private final int streamId;
+        private final int messageType;
+        private long bytes = 0; // принято байт данных
+        private Object attachment; // состояние обработчика
+
+        Stream(int streamId, int messageType) {
+            this.streamId = streamId;
+            this.messageType = messageType;
+        }
+
+        public int getStreamId() {
+            return streamId;
+        }
+
+        public int getMessageType() {
+            return messageType;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        void addBytes(long count) {
+            this.bytes += count;
+        }
+
+        public Object getAttachment() {
+            return attachment;
+        }
+
+        public void setAttachment(Object attachment) {
+            this.attachment = attachment;
+        }
+    }
+}
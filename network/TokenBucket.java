@@ -0,0 +1,52 @@
+package network;
+
+// Корзина токенов (token bucket): rate токенов в секунду, не больше capacity (допустимый всплеск).
+// Токены пополняются лениво при обращении по прошедшему времени.
+// consume() допускает уход в долг: объём прочитанных данных известен только после чтения,
+// поэтому токены списываются по факту, а следующее чтение ждёт, пока долг не будет погашен.
+// Не потокобезопасно: используется одним потоком (потоком чтения канала или потоком сервера)
+public final class TokenBucket {
+    private final double rate; // токенов в наносекунду
+    private final double capacity; // макс. кол-во токенов
+    private double tokens; // текущее кол-во токенов (< 0 - долг)
+    private long lastRefill; // время последнего пополнения (System.nanoTime())
+
+    // ratePerSecond - скорость пополнения (> 0), burst - ёмкость (<= 0 - равна скорости за секунду)
+    public TokenBucket(long ratePerSecond, long burst) {
+        if (ratePerSecond <= 0)
+            throw new IllegalArgumentException("Rate must be > 0: " + ratePerSecond);
+        this.rate = ratePerSecond / 1e9;
+        this.capacity = burst > 0 ? burst : ratePerSecond;
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * rate);
+            lastRefill = now;
+        }
+    }
+
+    // Забирает count токенов, если они есть. Возвращает false, если токенов не хватает
+    public boolean tryAcquire(long count, long now) {
+        refill(now);
+        if (tokens < count)
+            return false;
+        tokens -= count;
+        return true;
+    }
+
+    // Списывает count токенов (в т.ч. в долг)
+    public void consume(long count, long now) {
+        refill(now);
+        tokens -= count;
+    }
+
+    // Время до появления count токенов, нс (0 - токены уже есть)
+    public long nanosUntil(long count, long now) {
+        refill(now);
+        double deficit = count - tokens;
+        return deficit <= 0 ? 0 : (long) Math.ceil(deficit / rate);
+    }
+}
@@ -0,0 +1,164 @@
+package network;
+
+import network.packets.PacketTopic;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Реестр тем (pub/sub).
+// Публикация кодируется один раз в буфер пула, каждый подписчик получает read-only дубликат
+// (своя позиция, общая память и счётчик ссылок). Подписчики темы сгруппированы по циклам событий:
+// рассылка - одна задача на цикл, каждый цикл отправляет своим подписчикам в своём потоке.
+// Подписчик с очередью отправки выше верхнего порога пропускает сообщение (учитывается в drops).
+// Блокирующим каналам (поток на подключение) сообщение только ставится в очередь, в канал его пишет
+// исполнитель дозаписи движка, поток публикации не блокируется на медленном подписчике
+public final class TopicRegistry {
+    private static final ConcurrentHashMap<String, Topic> topics = new ConcurrentHashMap<>();
+
+    public static final LongAdder publishes = Metrics.counter("topicPublishes"); // опубликовано сообщений
+    public static final LongAdder deliveries = Metrics.counter("topicDeliveries"); // доставлено подписчикам
+    public static final LongAdder drops = Metrics.counter("topicDrops"); // пропущено (медленный подписчик)
+
+    static {
+        Metrics.gauge("topics", topics::size);
+    }
+
+    private TopicRegistry() {
+    }
+
+    // Подписывает клиента на тему (тема создаётся при первой подписке)
+    public static void subscribe(String name, ClientBase client) {
+        topics.compute(name, (key, topic) -> {
+            if (topic == null)
+                topic = new Topic(key);
+            topic.add(client);
+            return topic;
+        });
+    }
+
+    // Отписывает клиента от темы. Тема без подписчиков удаляется
+    public static void unsubscribe(String name, ClientBase client) {
+        topics.computeIfPresent(name, (key, topic) -> {
+            topic.remove(client);
+            return topic.subscriberCount.get() > 0 ? topic : null;
+        });
+    }
+
+    // Публикует данные в тему. Возвращает кол-во подписчиков, которым начата рассылка
+    public static int publish(String name, ByteBuffer data) {
+        Topic topic = topics.get(name);
+        publishes.increment();
+        if (topic == null)
+            return 0;
+        topic.published.increment();
+
+        // кодируем один раз, подписчики получают дубликаты
+        PooledBuffer frame = PacketTopic.encode(PacketTopic.MESSAGE, name, data);
+        long publishTime = System.nanoTime();
+        int recipients = 0;
+        for (Map.Entry<Object, Set<ClientBase>> group : topic.subscribers.entrySet()) {
+            Set<ClientBase> clients = group.getValue();
+            if (clients.isEmpty())
+                continue;
+            recipients += clients.size();
+            frame.retain(); // ссылка задачи рассылки
+            Runnable fanOut = () -> topic.deliver(clients, frame, publishTime);
+            if (group.getKey() instanceof Executor)
+                ((Executor) group.getKey()).execute(fanOut);
+            else
+                fanOut.run(); // блокирующие каналы: только постановка в очередь, запись - в исполнителе дозаписи
+        }
+        frame.release();
+        return recipients;
+    }
+
+    // Статистика тем: подписчики, публикации, доставки, пропуски и задержка рассылки
+    public static String getStats() {
+        List<Topic> list = new ArrayList<>(topics.values());
+        list.sort((a, b) -> a.name.compareTo(b.name));
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-24s %11s %11s %12s %9s %12s %12s%n",
+                "Topic", "subscribers", "published", "delivered", "dropped", "avgLag(us)", "maxLag(us)"));
+        for (Topic topic : list) {
+            long fanOuts = topic.fanOuts.sum();
+            sb.append(String.format("%-24s %11d %11d %12d %9d %12.1f %12d%n", topic.name,
+                    topic.subscriberCount.get(), topic.published.sum(), topic.delivered.sum(), topic.dropped.sum(),
+                    fanOuts > 0 ? topic.lagNanos.sum() / 1000.0 / fanOuts : 0.0, topic.maxLagNanos.get() / 1000));
+        }
+        sb.append("Topics: ").append(list.size());
+        return sb.toString();
+    }
+
+    // Ключ группы подписчика: цикл событий или общая группа блокирующих каналов
+    private static Object loopOf(ClientBase client) {
+        return client.eventLoop != null ? client.eventLoop : BLOCKING;
+    }
+
+    private static final Object BLOCKING = new Object(); // группа подписчиков без цикла событий
+
+    // Тема: подписчики по циклам событий и статистика
+    private static final class Topic {
+        private final String name;
+        private final Map<Object, Set<ClientBase>> subscribers = new ConcurrentHashMap<>();
+        private final AtomicInteger subscriberCount = new AtomicInteger(0);
+        private final LongAdder published = new LongAdder();
+        private final LongAdder delivered = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder fanOuts = new LongAdder(); // выполнено задач рассылки
+        private final LongAdder lagNanos = new LongAdder(); // суммарная задержка рассылки (публикация -> отправка)
+        private final AtomicLong maxLagNanos = new AtomicLong(0);
+
+        Topic(String name) {
+            this.name = name;
+        }
+
+        void add(ClientBase client) {
+            if (subscribers.computeIfAbsent(loopOf(client), loop -> ConcurrentHashMap.newKeySet()).add(client))
+                subscriberCount.incrementAndGet();
+        }
+
+        boolean remove(ClientBase client) {
+            Set<ClientBase> clients = subscribers.get(loopOf(client));
+            if (clients != null && clients.remove(client)) {
+                subscriberCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        // Рассылает сообщение подписчикам одного цикла событий (выполняется в потоке цикла)
+        void deliver(Set<ClientBase> clients, PooledBuffer frame, long publishTime) {
+            try {
+                int sent = 0;
+                int skipped = 0;
+                for (ClientBase client : clients) {
+                    int result = client.deliverShared(frame);
+                    if (result == 1)
+                        sent++;
+                    else if (result == 0)
+                        skipped++;
+                    else if (clients.remove(client))
+                        subscriberCount.decrementAndGet(); // подключение закрыто
+                }
+                delivered.add(sent);
+                deliveries.add(sent);
+                dropped.add(skipped);
+                drops.add(skipped);
+            } finally {
+                frame.release();
+            }
+            long lag = System.nanoTime() - publishTime;
+            fanOuts.increment();
+            lagNanos.add(lag);
+            maxLagNanos.accumulateAndGet(lag, Math::max);
+        }
+    }
+}
@@ -1,6 +1,12 @@
 package network;
 
+import java.nio.ByteBuffer;
+
 public interface iPacket {
     void writePacketBody();
     void readPacketBody();
+    // Кодирует поля сообщения в буфер (с текущей позиции буфера)
+    void writePacketBody(ByteBuffer buffer);
+    // Декодирует поля сообщения из буфера (тело сообщения - от позиции до лимита буфера)
+    void readPacketBody(ByteBuffer buffer);
 }
@@ -1,34 +1,136 @@
 package network.packets;
 
 import network.PacketBase;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import network.PacketProvider;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 
+// Текстовое сообщение (UTF-8).
+// Принятое сообщение - обёртка над байтами тела в буфере: строка декодируется
+// только при первом вызове getMessage(), сравнение с командами - по байтам (PacketBase.bodyEquals...)
 public class Packet100Message extends PacketBase {
-    private static final Logger logger = LoggerFactory.getLogger(Packet100Message.class.getName());
     public static final int type = 100;
-    public String message;
+    private String message; // текст сообщения (null - ещё не декодирован)
+    private boolean decoded = true; // признак того, что message соответствует телу сообщения
+
+    // кодировщик UTF-8 потока (CharsetEncoder не потокобезопасен)
+    private static final ThreadLocal<CharsetEncoder> encoder = ThreadLocal.withInitial(() ->
+            StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+    // Поставщик типа для PacketFactory
+    public static class Provider implements PacketProvider {
+        @Override
+        public int getPacketType() {
+            return type;
+        }
+
+        @Override
+        public PacketBase newPacket() {
+            return new Packet100Message();
+        }
+    }
 
     public Packet100Message() {
+        setPacketType(type);
+    }
+
+    public Packet100Message(String message) {
+        this();
+        this.message = message;
+    }
+
+    // Текст сообщения. Для принятого сообщения декодируется из тела при первом обращении
+    public String getMessage() {
+        if (!this.decoded) {
+            ByteBuffer body = getPacketBodyBuffer();
+            if (body != null)
+                this.message = StandardCharsets.UTF_8.decode(body).toString();
+            else if (getPacketBody() != null)
+                this.message = new String(getPacketBody(), StandardCharsets.UTF_8);
+            this.decoded = true;
+        }
+        return this.message;
+    }
+
+    // Устанавливает текст сообщения. Закодированное тело сбрасывается,
+    // сообщение будет закодировано при отправке (или вызовом writePacketBody())
+    public void setMessage(String message) {
+        setPacketBody(null);
+        this.message = message;
+        this.decoded = true;
     }
 
     @Override
     public void writePacketBody() {
-        try {
-            setPacketBody(this.message.getBytes("UTF-8"));
-        } catch (UnsupportedEncodingException e) {
-            logger.debug("Exception: ", e);
-        }
+        setPacketBody(getMessage().getBytes(StandardCharsets.UTF_8));
     }
 
+    // Тело остаётся в сообщении, строка будет декодирована при обращении к getMessage()
     @Override
     public void readPacketBody() {
-        try {
-            this.message = new String(getPacketBody(), "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            logger.debug("Exception: ", e);
+        this.message = null;
+        this.decoded = false;
+    }
+
+    // Кодирует строку в UTF-8 прямо в буфер (без промежуточного массива).
+    // ASCII строки копируются побайтно, остальные - через кодировщик StandardCharsets.UTF_8
+    @Override
+    public void writePacketBody(ByteBuffer buffer) {
+        String text = getMessage();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c >= 0x80)
+                break;
+            buffer.put((byte) c);
+            i++;
+        }
+        if (i < length) {
+            CharsetEncoder charsetEncoder = encoder.get();
+            charsetEncoder.reset();
+            charsetEncoder.encode(CharBuffer.wrap(text, i, length), buffer, true);
+            charsetEncoder.flush(buffer);
+        }
+    }
+
+    // Тело остаётся в буфере, строка будет декодирована при обращении к getMessage()
+    @Override
+    public void readPacketBody(ByteBuffer buffer) {
+        this.message = null;
+        this.decoded = false;
+    }
+
+    // Точный размер строки в UTF-8
+    @Override
+    protected int getMaxPacketBodySize() {
+        String text = getMessage();
+        if (text == null)
+            return 0;
+        int length = text.length();
+        int size = length;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x800) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    size += 2; // 4 байта на 2 символа
+                    i++;
+                } else
+                    size += 2;
+            } else if (c >= 0x80)
+                size += 1;
         }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getPacketLength() + "," + getPacketType() + "] " + getMessage();
     }
 }
@@ -0,0 +1,105 @@
+package network.packets;
+
+import network.PacketBase;
+import network.PacketProvider;
+
+import java.nio.ByteBuffer;
+
+// Часть (chunk) потокового сообщения произвольного размера.
+// Тело: [ИД потока][тип сообщения][флаги][данные]. Сообщение больше network.packet.maxsize
+// передаётся последовательностью частей одного потока: первая с флагом FIRST, последняя - с LAST.
+// Данные части отдаются обработчику потока (StreamHandler) срезом буфера без копирования,
+// сообщение целиком нигде не собирается
+public class PacketChunk extends PacketBase {
+    public static final int type = 3;
+    public static final int CHUNK_HEADER_SIZE = 12; // ИД потока + тип сообщения + флаги
+    public static final int FRAME_HEADER_SIZE = HEADER_SIZE + CHUNK_HEADER_SIZE; // заголовок части целиком
+
+    // флаги части
+    public static final int FIRST = 1; // первая часть потока
+    public static final int LAST = 2; // последняя часть потока
+    public static final int ABORT = 4; // передача прервана отправителем
+
+    // тип потокового сообщения "содержимое файла" (ответ на команду get)
+    public static final int FILE_CONTENT = 4;
+
+    private int streamId;
+    private int messageType;
+    private int flags;
+
+    // Поставщик типа для PacketFactory
+    public static class Provider implements PacketProvider {
+        @Override
+        public int getPacketType() {
+            return type;
+        }
+
+        @Override
+        public PacketBase newPacket() {
+            return new PacketChunk();
+        }
+    }
+
+    public PacketChunk() {
+        setPacketType(type);
+    }
+
+    // Записывает заголовок части (длина и тип сообщения, ИД потока, тип потокового сообщения, флаги)
+    public static void writeHeader(ByteBuffer buffer, int dataLength, int streamId, int messageType, int flags) {
+        buffer.putInt(TYPE_SIZE + CHUNK_HEADER_SIZE + dataLength);
+        buffer.putInt(type);
+        buffer.putInt(streamId);
+        buffer.putInt(messageType);
+        buffer.putInt(flags);
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public int getMessageType() {
+        return messageType;
+    }
+
+    public boolean isFirst() {
+        return (flags & FIRST) != 0;
+    }
+
+    public boolean isLast() {
+        return (flags & LAST) != 0;
+    }
+
+    public boolean isAborted() {
+        return (flags & ABORT) != 0;
+    }
+
+    // Признак того, что заголовок части прочитан (тело не короче заголовка части)
+    public boolean isValid() {
+        return getPacketBodySize() >= CHUNK_HEADER_SIZE;
+    }
+
+    // Данные части без копирования (позиция - начало данных, лимит - конец)
+    public ByteBuffer getData() {
+        ByteBuffer body = getPacketBodyBuffer();
+        if (body == null)
+            body = ByteBuffer.wrap(getPacketBody());
+        body.position(body.position() + CHUNK_HEADER_SIZE);
+        return body.slice();
+    }
+
+    @Override
+    public void readPacketBody(ByteBuffer buffer) {
+        if (buffer.remaining() < CHUNK_HEADER_SIZE)
+            return;
+        int position = buffer.position();
+        this.streamId = buffer.getInt(position);
+        this.messageType = buffer.getInt(position + 4);
+        this.flags = buffer.getInt(position + 8);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getPacketLength() + "," + getPacketType() + "] chunk stream=" + streamId +
+                " type=" + messageType + " flags=" + flags + " data=" + (getPacketBodySize() - CHUNK_HEADER_SIZE);
+    }
+}
@@ -0,0 +1,109 @@
+package network.packets;
+
+import network.BufferPool;
+import network.PacketBase;
+import network.PacketProvider;
+import network.PooledBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Сообщение подписки (pub/sub).
+// Тело: [операция][длина имени темы][имя темы (UTF-8)][данные].
+// SUBSCRIBE/UNSUBSCRIBE - подписка клиента на тему, PUBLISH - публикация данных в тему,
+// MESSAGE - доставка опубликованных данных подписчику (кодируется один раз на публикацию)
+public class PacketTopic extends PacketBase {
+    public static final int type = 5;
+    public static final int MAX_TOPIC_LENGTH = 255; // макс. длина имени темы (байт)
+
+    // операции
+    public static final int SUBSCRIBE = 1;
+    public static final int UNSUBSCRIBE = 2;
+    public static final int PUBLISH = 3;
+    public static final int MESSAGE = 4;
+
+    private int operation;
+    private String topic;
+    private int dataOffset; // смещение данных от начала тела (-1 - тело не разобрано)
+
+    // Поставщик типа для PacketFactory
+    public static class Provider implements PacketProvider {
+        @Override
+        public int getPacketType() {
+            return type;
+        }
+
+        @Override
+        public PacketBase newPacket() {
+            return new PacketTopic();
+        }
+    }
+
+    public PacketTopic() {
+        setPacketType(type);
+    }
+
+    // Кодирует сообщение в буфер пула (позиция - начало сообщения, лимит - конец)
+    public static PooledBuffer encode(int operation, String topic, ByteBuffer data) {
+        byte[] name = topic.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_TOPIC_LENGTH)
+            throw new IllegalArgumentException("Topic name is too long: " + name.length);
+        int dataLength = data != null ? data.remaining() : 0;
+        int bodyLength = 8 + name.length + dataLength;
+        PooledBuffer frame = BufferPool.acquire(HEADER_SIZE + bodyLength);
+        ByteBuffer buffer = frame.buffer();
+        buffer.putInt(TYPE_SIZE + bodyLength);
+        buffer.putInt(type);
+        buffer.putInt(operation);
+        buffer.putInt(name.length);
+        buffer.put(name);
+        if (data != null)
+            buffer.put(data.duplicate());
+        buffer.flip();
+        return frame;
+    }
+
+    public int getOperation() {
+        return operation;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    // Признак того, что тело разобрано (операция и имя темы прочитаны)
+    public boolean isValid() {
+        return dataOffset >= 0 && topic != null && !topic.isEmpty();
+    }
+
+    // Данные сообщения без копирования (позиция - начало данных, лимит - конец)
+    public ByteBuffer getData() {
+        ByteBuffer body = getPacketBodyBuffer();
+        if (body == null)
+            body = ByteBuffer.wrap(getPacketBody());
+        body.position(body.position() + Math.max(dataOffset, 0));
+        return body.slice();
+    }
+
+    @Override
+    public void readPacketBody(ByteBuffer buffer) {
+        this.dataOffset = -1;
+        int position = buffer.position();
+        if (buffer.remaining() < 8)
+            return;
+        int nameLength = buffer.getInt(position + 4);
+        if (nameLength < 0 || nameLength > MAX_TOPIC_LENGTH || buffer.remaining() < 8 + nameLength)
+            return;
+        this.operation = buffer.getInt(position);
+        ByteBuffer name = buffer.duplicate();
+        name.position(position + 8);
+        name.limit(position + 8 + nameLength);
+        this.topic = StandardCharsets.UTF_8.decode(name).toString();
+        this.dataOffset = 8 + nameLength;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getPacketLength() + "," + getPacketType() + "] topic op=" + operation + " " + topic;
+    }
+}
@@ -25,23 +25,91 @@ public class AppSettings extends Properties {
     {
         paramsDefault.put("server.ip", "localhost");
         paramsDefault.put("server.port", "8000");
+        paramsDefault.put("server.engine", "selector");
+        paramsDefault.put("server.worker.count", "0");
+        paramsDefault.put("server.worker.balance", "roundrobin");
+        paramsDefault.put("server.select.strategy", "blocking");
+        paramsDefault.put("server.select.timeout", "100");
+        paramsDefault.put("server.select.spincount", "1000");
         paramsDefault.put("server.client.thread.count", "5");
         paramsDefault.put("server.client.thread.maxcount", "10");
         paramsDefault.put("server.client.thread.keepalive", "1000");
+        paramsDefault.put("server.files.dir", ""); // пусто - команда get отключена (каталог задаётся явно)
+        paramsDefault.put("server.idle.read", "120000");
+        paramsDefault.put("server.idle.write", "0");
+        paramsDefault.put("server.idle.all", "0");
+        paramsDefault.put("server.idle.tick", "100");
+        paramsDefault.put("server.heartbeat.interval", "0"); // ping (тип 6) понимают не все клиенты - включается явно
+        paramsDefault.put("server.accept.rate", "0");
+        paramsDefault.put("server.accept.burst", "0");
+        paramsDefault.put("server.lanes.weights", "8,4,1");
+        paramsDefault.put("server.lanes.starvation", "100");
+        paramsDefault.put("server.shutdown.timeout", "10000");
         paramsDefault.put("network.packet.maxsize", "1024");
+        paramsDefault.put("network.watermark.high", "65536");
+        paramsDefault.put("network.watermark.low", "32768");
+        paramsDefault.put("network.memory.cap", "67108864");
+        paramsDefault.put("network.pool.threadcache", "64");
+        paramsDefault.put("network.pool.maxpooled", "1024");
+        paramsDefault.put("network.batch.enabled", "true");
+        paramsDefault.put("network.batch.maxsize", "1024");
+        paramsDefault.put("network.compression.enabled", "true");
+        paramsDefault.put("network.compression.threshold", "256");
+        paramsDefault.put("network.compression.level", "1");
+        paramsDefault.put("network.ratelimit.packets", "0");
+        paramsDefault.put("network.ratelimit.packets.burst", "0");
+        paramsDefault.put("network.ratelimit.bytes", "0");
+        paramsDefault.put("network.ratelimit.bytes.burst", "0");
+        paramsDefault.put("network.lanes.types", "3:bulk");
+        paramsDefault.put("metrics.jmx", "true");
     }
 
     // SERVER SETTINGS
     public String SERVER_IP;
     public int SERVER_PORT;
+    public String SERVER_ENGINE; // движок сервера: selector | thread (поток на подключение)
+    public int SERVER_WORKER_COUNT; // кол-во рабочих циклов событий (0 - по кол-ву ядер)
+    public String SERVER_WORKER_BALANCE; // распределение подключений: roundrobin | leastloaded
+    public String SERVER_SELECT_STRATEGY; // ожидание событий: blocking | timed | spin | hybrid
+    public int SERVER_SELECT_TIMEOUT; // таймаут select для стратегии timed, мс
+    public int SERVER_SELECT_SPIN_COUNT; // кол-во пустых selectNow() до блокировки для стратегии hybrid
 
     // SERVER CLIENT SETTINGS
     public int CLIENT_THREAD_COUNT;
     public int CLIENT_THREAD_MAX_COUNT;
     public int CLIENT_THREAD_KEEPALIVE;
+    public String SERVER_FILES_DIR; // каталог файлов для команды get (пусто - команда отключена)
+    public int SERVER_IDLE_READ; // таймаут без входящих данных, мс (0 - отключён)
+    public int SERVER_IDLE_WRITE; // таймаут без отправки данных, мс (0 - отключён)
+    public int SERVER_IDLE_ALL; // таймаут без чтения и записи, мс (0 - отключён)
+    public int SERVER_IDLE_TICK; // длительность тика колеса таймеров (неактивность, ping), мс
+    public int SERVER_HEARTBEAT_INTERVAL; // интервал отправки ping клиентам, мс (0 - не отправляются)
+    public int SERVER_ACCEPT_RATE; // макс. кол-во принимаемых подключений в секунду (0 - без лимита)
+    public int SERVER_ACCEPT_BURST; // допустимый всплеск подключений (0 - равен лимиту за секунду)
+    public String SERVER_LANES_WEIGHTS; // веса полос обработки control,interactive,bulk (выборок за круг)
+    public int SERVER_LANES_STARVATION; // макс. ожидание задачи до выборки вне очереди, мс (0 - отключено)
+    public int SERVER_SHUTDOWN_TIMEOUT; // срок обработки и отправки ответов при остановке сервера, мс
 
     //NETWORK SETTINGS
     public int NET_MAX_PACKET_SIZE;
+    public int NET_WATERMARK_HIGH; // верхний порог очереди отправки клиента (байт), выше - чтение приостанавливается
+    public int NET_WATERMARK_LOW; // нижний порог очереди отправки клиента (байт), ниже - чтение возобновляется
+    public int NET_MEMORY_CAP; // общий лимит очередей отправки всех клиентов (байт)
+    public int NET_POOL_THREAD_CACHE; // макс. кол-во буферов одного размера в кэше потока
+    public int NET_POOL_MAX_POOLED; // макс. кол-во буферов одного размера в общем пуле
+    public boolean NET_BATCH_ENABLED; // упаковывать ответы в пакетные сообщения для клиентов, которые их присылают
+    public int NET_BATCH_MAX_SIZE; // макс. размер исходящего пакетного сообщения (байт)
+    public boolean NET_COMPRESSION_ENABLED; // соглашаться на сжатие сообщений по запросу клиента
+    public int NET_COMPRESSION_THRESHOLD; // мин. размер сообщения для сжатия (байт)
+    public int NET_COMPRESSION_LEVEL; // уровень сжатия deflate (1 - быстрее, 9 - сильнее)
+    public int NET_RATE_PACKETS; // лимит сообщений от клиента в секунду (0 - без лимита)
+    public int NET_RATE_PACKETS_BURST; // допустимый всплеск сообщений (0 - равен лимиту за секунду)
+    public int NET_RATE_BYTES; // лимит байт от клиента в секунду (0 - без лимита)
+    public int NET_RATE_BYTES_BURST; // допустимый всплеск байт (0 - равен лимиту за секунду)
+    public String NET_LANES_TYPES; // полосы типов сообщений "тип:полоса,..." (остальные - interactive)
+
+    //METRICS SETTINGS
+    public boolean METRICS_JMX; // публиковать метрики через JMX (MBean network:type=Metrics)
 
     private AppSettings() {}
 
@@ -82,12 +150,46 @@ public class AppSettings extends Properties {
 
             SERVER_IP = getStringProperty("server.ip");
             SERVER_PORT = getIntProperty("server.port");
+            SERVER_ENGINE = getStringProperty("server.engine");
+            SERVER_WORKER_COUNT = getIntProperty("server.worker.count");
+            SERVER_WORKER_BALANCE = getStringProperty("server.worker.balance");
+            SERVER_SELECT_STRATEGY = getStringProperty("server.select.strategy");
+            SERVER_SELECT_TIMEOUT = getIntProperty("server.select.timeout");
+            SERVER_SELECT_SPIN_COUNT = getIntProperty("server.select.spincount");
 
             CLIENT_THREAD_COUNT = getIntProperty("server.client.thread.count");
             CLIENT_THREAD_MAX_COUNT = getIntProperty("server.client.thread.maxcount");
             CLIENT_THREAD_KEEPALIVE = getIntProperty("server.client.thread.keepalive");
+            SERVER_FILES_DIR = getStringProperty("server.files.dir");
+            SERVER_IDLE_READ = getIntProperty("server.idle.read");
+            SERVER_IDLE_WRITE = getIntProperty("server.idle.write");
+            SERVER_IDLE_ALL = getIntProperty("server.idle.all");
+            SERVER_IDLE_TICK = getIntProperty("server.idle.tick");
+            SERVER_HEARTBEAT_INTERVAL = getIntProperty("server.heartbeat.interval");
+            SERVER_ACCEPT_RATE = getIntProperty("server.accept.rate");
+            SERVER_ACCEPT_BURST = getIntProperty("server.accept.burst");
+            SERVER_LANES_WEIGHTS = getStringProperty("server.lanes.weights");
+            SERVER_LANES_STARVATION = getIntProperty("server.lanes.starvation");
+            SERVER_SHUTDOWN_TIMEOUT = getIntProperty("server.shutdown.timeout");
 
             NET_MAX_PACKET_SIZE = getIntProperty("network.packet.maxsize");
+            NET_WATERMARK_HIGH = getIntProperty("network.watermark.high");
+            NET_WATERMARK_LOW = getIntProperty("network.watermark.low");
+            NET_MEMORY_CAP = getIntProperty("network.memory.cap");
+            NET_POOL_THREAD_CACHE = getIntProperty("network.pool.threadcache");
+            NET_POOL_MAX_POOLED = getIntProperty("network.pool.maxpooled");
+            NET_BATCH_ENABLED = Boolean.parseBoolean(getStringProperty("network.batch.enabled"));
+            NET_BATCH_MAX_SIZE = getIntProperty("network.batch.maxsize");
+            NET_COMPRESSION_ENABLED = Boolean.parseBoolean(getStringProperty("network.compression.enabled"));
+            NET_COMPRESSION_THRESHOLD = getIntProperty("network.compression.threshold");
+            NET_COMPRESSION_LEVEL = getIntProperty("network.compression.level");
+            NET_RATE_PACKETS = getIntProperty("network.ratelimit.packets");
+            NET_RATE_PACKETS_BURST = getIntProperty("network.ratelimit.packets.burst");
+            NET_RATE_BYTES = getIntProperty("network.ratelimit.bytes");
+            NET_RATE_BYTES_BURST = getIntProperty("network.ratelimit.bytes.burst");
+            NET_LANES_TYPES = getStringProperty("network.lanes.types");
+
+            METRICS_JMX = Boolean.parseBoolean(getStringProperty("metrics.jmx"));
 
         } catch (IOException e) {
             return false;
@@ -174,12 +276,46 @@ public class AppSettings extends Properties {
 
         System.out.println("Server IP = " + SERVER_IP);
         System.out.println("Server PORT = " + SERVER_PORT);
+        System.out.println("Server engine = " + SERVER_ENGINE);
+        System.out.println("Server worker count = " + SERVER_WORKER_COUNT);
+        System.out.println("Server worker balance = " + SERVER_WORKER_BALANCE);
+        System.out.println("Server select strategy = " + SERVER_SELECT_STRATEGY);
+        System.out.println("Server select timeout = " + SERVER_SELECT_TIMEOUT);
+        System.out.println("Server select spin count = " + SERVER_SELECT_SPIN_COUNT);
 
         System.out.println("Client thread count = " + CLIENT_THREAD_COUNT);
         System.out.println("Client thread max count = " + CLIENT_THREAD_MAX_COUNT);
         System.out.println("Client thread keepalive timeout = " + CLIENT_THREAD_KEEPALIVE);
+        System.out.println("Server files directory = " + SERVER_FILES_DIR);
+        System.out.println("Server idle read timeout = " + SERVER_IDLE_READ);
+        System.out.println("Server idle write timeout = " + SERVER_IDLE_WRITE);
+        System.out.println("Server idle all timeout = " + SERVER_IDLE_ALL);
+        System.out.println("Server idle timer tick = " + SERVER_IDLE_TICK);
+        System.out.println("Server heartbeat interval = " + SERVER_HEARTBEAT_INTERVAL);
+        System.out.println("Server accept rate = " + SERVER_ACCEPT_RATE);
+        System.out.println("Server accept burst = " + SERVER_ACCEPT_BURST);
+        System.out.println("Server lanes weights = " + SERVER_LANES_WEIGHTS);
+        System.out.println("Server lanes starvation limit = " + SERVER_LANES_STARVATION);
+        System.out.println("Server shutdown timeout = " + SERVER_SHUTDOWN_TIMEOUT);
 
         System.out.println("Network max packet size = " + NET_MAX_PACKET_SIZE);
+        System.out.println("Network output high watermark = " + NET_WATERMARK_HIGH);
+        System.out.println("Network output low watermark = " + NET_WATERMARK_LOW);
+        System.out.println("Network output memory cap = " + NET_MEMORY_CAP);
+        System.out.println("Network buffer pool thread cache = " + NET_POOL_THREAD_CACHE);
+        System.out.println("Network buffer pool max pooled = " + NET_POOL_MAX_POOLED);
+        System.out.println("Network batch enabled = " + NET_BATCH_ENABLED);
+        System.out.println("Network batch max size = " + NET_BATCH_MAX_SIZE);
+        System.out.println("Network compression enabled = " + NET_COMPRESSION_ENABLED);
+        System.out.println("Network compression threshold = " + NET_COMPRESSION_THRESHOLD);
+        System.out.println("Network compression level = " + NET_COMPRESSION_LEVEL);
+        System.out.println("Network rate limit packets = " + NET_RATE_PACKETS);
+        System.out.println("Network rate limit packets burst = " + NET_RATE_PACKETS_BURST);
+        System.out.println("Network rate limit bytes = " + NET_RATE_BYTES);
+        System.out.println("Network rate limit bytes burst = " + NET_RATE_BYTES_BURST);
+        System.out.println("Network lanes types = " + NET_LANES_TYPES);
+
+        System.out.println("Metrics JMX = " + METRICS_JMX);
 
     }
 
@@ -1,20 +1,32 @@
 package server;
 
 import network.Client;
+import network.ClientBase;
+import network.Metrics;
+import network.PacketBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.channels.SelectionKey;
-import java.util.ArrayList;
+import java.nio.channels.SocketChannel;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 // Класс управляет экземплярами потоков клиентов
-// Управляет созданием экземпляра клиента, чтением/записью данных в канал клинета
+// Управляет созданием экземпляра клиента, чтением/записью данных в канал клинета.
+// Сессия канала с селектором хранится во вложении его SelectionKey (события чтения/записи
+// находят сессию без поиска), все сессии - в индексе по ИД клиента (для прямой отправки sendTo)
 public class ClientManager {
     private static final Logger logger = LoggerFactory.getLogger(ClientManager.class.getName());
-    public static final ConcurrentMap<SelectionKey, Client> sessions = new ConcurrentHashMap<>(); // MAP для хранения сессий
+    private static final SessionIndex sessions = new SessionIndex(); // сессии по ИД клиента
+
+    public static final LongAdder directSends = Metrics.counter("directSends"); // отправлено через sendTo
+    public static final LongAdder directDrops = Metrics.counter("directDrops"); // не отправлено (нет клиента, канал закрыт, очередь переполнена)
+
+    // очередь задач обработки с полосами приоритета (управляющие, обычные, массовые сообщения)
+    private static final LaneQueue laneQueue = new LaneQueue();
 
     // создаём менеджер потоков для обработки вх. сообщений в отдельных потоках
     private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
@@ -22,34 +34,115 @@ public class ClientManager {
             4, // макс. кол-во потоков в пуле
             5000, // время которое живёт ничего не делающий поток
             TimeUnit.MILLISECONDS, // единицы измерения времени
-            new LinkedBlockingQueue<Runnable>(), // тип экземпляра
+            laneQueue, // очередь задач с полосами приоритета
+            new ProcessingThreadFactory(), // потоки обработки с именами pThread-N
             new ThreadPoolExecutor.CallerRunsPolicy() // политика
     );
 
-    private static int clientCounter = 0; // счётчик когда-либо подключенных клиентов
+    // Создаёт потоки обработки вх. сообщений с именами pThread-N.
+    // Потоки - демоны: не держат процесс после остановки сервера (обработка к этому моменту завершена)
+    private static class ProcessingThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCounter = new AtomicInteger(0);
 
-    // Получаем новый уникальный ИД клиента
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "pThread-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static final AtomicInteger clientCounter = new AtomicInteger(0); // счётчик когда-либо подключенных клиентов
+
+    static {
+        // закрытая сессия удаляется из индекса, где бы ни был закрыт канал (ошибка, quit, остановка)
+        Client.configureCloseListener(client -> sessions.remove((int) client.getClientId(), client));
+        Metrics.gauge("sessions", sessions::size);
+        Metrics.gauge("executorQueue", () -> executor.getQueue().size());
+        Metrics.gauge("executorActive", executor::getActiveCount);
+        Metrics.gauge("inputQueueTotal", () -> {
+            long total = 0;
+            for (Client client : getSessionList())
+                total += client.getInputQueueSize();
+            return total;
+        });
+        Metrics.gauge("inputQueueMax", () -> {
+            long max = 0;
+            for (Client client : getSessionList())
+                max = Math.max(max, client.getInputQueueSize());
+            return max;
+        });
+        Metrics.gauge("outputBytesMax", () -> {
+            long max = 0;
+            for (Client client : getSessionList())
+                max = Math.max(max, client.getPendingOutputBytes());
+            return max;
+        });
+    }
+
+    // Устанавливает веса полос очереди обработки ("8,4,1") и макс. ожидание задачи до выборки вне очереди, мс
+    static void configureLanes(String weights, long starvationMillis) {
+        laneQueue.configure(weights, starvationMillis);
+    }
+
+    // Статистика ожидания задач обработки по полосам
+    public static String getLaneStats() {
+        return laneQueue.getStats();
+    }
+
+    // Получаем новый уникальный ИД клиента (без блокировки).
+    // После переполнения счётчик начинается с 11, ИД ещё подключенных клиентов пропускаются
     private static int getNewClientId() {
-        if((clientCounter + 1) == Integer.MAX_VALUE) clientCounter = 10;
-        return ++clientCounter;
+        while (true) {
+            int id = clientCounter.updateAndGet(counter -> (counter + 1) == Integer.MAX_VALUE ? 11 : counter + 1);
+            if(sessions.get(id) == null)
+                return id;
+        }
     }
 
-    public static void registerNewClient(SelectionKey clientKey) {
+    // Регистрирует клиента для канала, обслуживаемого циклом событий eventLoop.
+    // Возвращает клиента или null, если канал уже закрыт
+    public static Client registerNewClient(SelectionKey clientKey, Executor eventLoop) {
         try {
             int id = getNewClientId();
-            Client client = new Client(clientKey, id);
-            registerNewSession(clientKey, client);
+            Client client = new Client(clientKey, id, eventLoop);
+            if(registerNewSession(client) == null) {
+                client.closeChannel();
+                return null;
+            }
+            clientKey.attach(client); // события ключа находят сессию по вложению
             logger.info("New client connected (ID={})", client.getClientId());
+            return client;
         } catch (Exception e) {
             logger.info("Selection key is canceled {}", clientKey);
+            return null;
+        }
+    }
+
+    // Регистрирует клиента для канала без селектора (поток на подключение)
+    public static Client registerNewClient(SocketChannel clientChannel) {
+        try {
+            int id = getNewClientId();
+            Client client = new Client(clientChannel, id);
+            if(registerNewSession(client) == null)
+                return null;
+            logger.info("New client connected (ID={})", client.getClientId());
+            return client;
+        } catch (Exception e) {
+            logger.info("Client channel is closed {}", clientChannel);
+            return null;
         }
     }
 
     public static void readClientChannel(SelectionKey clientKey) {
         Client client = getClientByKey(clientKey); // определяем сессию клиента по ключу
+        if(client == null) { // ключ ещё не связан с сессией или уже закрыт
+            clientKey.cancel();
+            return;
+        }
         int status = client.read();
         if(status == 1) { // читаем данные
-            executor.execute(client); // запускаем обработку сообщения в отдельном потоке
+            client.schedule(executor); // запускаем обработку сообщений в отдельном потоке (не более одной задачи на клиента)
         }
         else if(status == -1) {
             closeClientChannel(clientKey);
@@ -58,6 +151,10 @@ public class ClientManager {
 
     public static void writeClientChannel(SelectionKey clientKey) {
         Client client = getClientByKey(clientKey); // определяем сессию клиента по ключу
+        if(client == null) {
+            clientKey.cancel();
+            return;
+        }
         int status = client.write(); // отправляем данные
         if(status == -1) {
             closeClientChannel(clientKey);
@@ -68,48 +165,122 @@ public class ClientManager {
         removeSession(clientKey);
     }
 
+    // Закрывает канал клиента и удаляет сессию
+    public static void closeClientChannel(Client client) {
+        client.closeChannel();
+        sessions.remove((int) client.getClientId(), client);
+    }
+
     public static void closeAllClientChannels() {
         removeAllSessions();
     }
 
-    // Конструктор. Запоминает сессию клиента
-    public static Client registerNewSession(SelectionKey key, Client client) {
-        if(key != null && client != null) {
-            sessions.put(key, client);
-            return client;
+    // Отправляет сообщение клиенту по ИД. Можно вызывать из любого потока (обработчики, консоль).
+    // Сообщение сразу пишется в канал, остаток допишет цикл событий клиента.
+    // Возвращает false, если клиента нет, канал закрыт или очередь отправки клиента переполнена
+    // (сообщение в этом случае освобождается)
+    public static boolean sendTo(int clientId, PacketBase packet) {
+        Client client = sessions.get(clientId);
+        if(client == null) {
+            packet.release();
+            directDrops.increment();
+            return false;
         }
-        else return null;
+        if(!client.send(packet)) {
+            directDrops.increment();
+            return false;
+        }
+        directSends.increment();
+        return true;
     }
 
-    // Метод возвращает экземпляр клиента ClientManager по SelectionKey
+    // Возвращает сессию клиента по ИД или null
+    public static Client getClientById(int clientId) {
+        return sessions.get(clientId);
+    }
+
+    // Запоминает сессию клиента в индексе по ИД
+    public static Client registerNewSession(Client client) {
+        if(client != null && sessions.putIfAbsent((int) client.getClientId(), client))
+            return client;
+        logger.error("Client ID is already registered");
+        return null;
+    }
+
+    // Метод возвращает экземпляр клиента по SelectionKey (сессия хранится во вложении ключа)
     public static Client getClientByKey(SelectionKey key) {
         if(key != null)
-            return sessions.get(key);
+            return (Client) key.attachment();
         else return null;
     }
 
     // Метод удалёет сессию клиента
     public static void removeSession(SelectionKey key) {
-        if(key != null)
-            sessions.remove(key);
+        Client client = getClientByKey(key);
+        if(client != null) {
+            sessions.remove((int) client.getClientId(), client);
+            key.attach(null);
+        }
     }
 
-    // Метод удаляет все сессии
+    // Метод закрывает каналы и удаляет все сессии
     public static void removeAllSessions() {
-        for(Map.Entry<SelectionKey, Client> entry : sessions.entrySet()) {
-            sessions.remove(entry.getKey());
-            entry.getKey().cancel();
+        for(Client client : sessions.values()) {
+            closeClientChannel(client);
         }
     }
 
-    public static List<Client> getSessionList() {
-        ArrayList<Client> result =  new ArrayList<>();
+    // Прекращает чтение каналов всех клиентов (остановка сервера).
+    // OP_READ снимается в циклах событий, уже прочитанные сообщения обрабатываются как обычно
+    static void stopReading() {
+        ClientBase.stopReading();
+        for(Client client : sessions.values()) {
+            client.refreshInterestOps();
+        }
+    }
 
-        for(Map.Entry<SelectionKey, Client> pair: sessions.entrySet()) {
-            result.add(pair.getValue());
+    // Кол-во задач обработки в очереди исполнителя и выполняющихся
+    static int getPendingTaskCount() {
+        return executor.getQueue().size() + executor.getActiveCount();
+    }
+
+    // Кол-во необработанных вх. сообщений всех клиентов
+    static long getUnprocessedPacketCount() {
+        long total = 0;
+        for(Client client : sessions.values()) {
+            if(client.isOpen())
+                total += client.getInputQueueSize();
+        }
+        return total;
+    }
+
+    // Кол-во открытых сессий с неотправленными ответами
+    static int getPendingOutputCount() {
+        int count = 0;
+        for(Client client : sessions.values()) {
+            if(client.isOpen() && client.hasPendingOutput())
+                count++;
+        }
+        return count;
+    }
+
+    // Кол-во неотправленных байт в очередях отправки открытых сессий
+    static long getPendingOutputBytes() {
+        long total = 0;
+        for(Client client : sessions.values()) {
+            if(client.isOpen())
+                total += client.getPendingOutputBytes();
         }
+        return total;
+    }
 
-        return result;
+    // Кол-во сессий
+    public static int getSessionCount() {
+        return sessions.size();
+    }
+
+    public static List<Client> getSessionList() {
+        return sessions.values();
     }
 
 }
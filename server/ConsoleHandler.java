@@ -1,6 +1,11 @@
 package server;
 
+import network.BufferPool;
 import network.Client;
+import network.FrameCompression;
+import network.TopicRegistry;
+import network.Metrics;
+import network.packets.Packet100Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,17 +36,25 @@ public class ConsoleHandler implements Runnable {
 
     @Override
     public void run() {
+        String line = "";
         String command = "";
         boolean isShutdown = false;
 
         while(!isShutdown) {
             try {
-                command = this.readConsole().toLowerCase();
+                line = this.readConsole();
+                command = line.toLowerCase();
             } catch (IOException e) {
                 logger.error("Console command read error");
                 return;
             }
 
+            // send <ИД клиента> <текст> - текст отправляется без приведения к нижнему регистру
+            if(command.startsWith("send ")) {
+                this.sendToClient(line.substring(5).trim());
+                continue;
+            }
+
             switch (command) {
                 case "help":
                     this.getHelp();
@@ -55,6 +68,26 @@ public class ConsoleHandler implements Runnable {
                     this.getSessions();
                     break;
 
+                case "show engine":
+                    this.printEngineStats();
+                    break;
+
+                case "show pool":
+                    this.printPoolStats();
+                    break;
+
+                case "show stats":
+                    this.printStats();
+                    break;
+
+                case "show lanes":
+                    this.printLaneStats();
+                    break;
+
+                case "show topics":
+                    this.printTopics();
+                    break;
+
                 case "show config":
                     this.printCurrentConfig();
                     break;
@@ -68,14 +101,17 @@ public class ConsoleHandler implements Runnable {
 
     private void shutdown() {
         this.writeConsole("Close console handler");
-        nioServer.shutdown();
+        nioServer.shutdown(this::writeConsole); // ход остановки выводится в консоль
     }
 
     private void getSessions() {
         List<Client> sessionList = ClientManager.getSessionList();
         if(sessionList.size() > 0) {
             for (Client client : sessionList) {
-                writeConsole(client.getClientId() + ": " + client.getConnectTime());
+                writeConsole(client.getClientId() + ": " + client.getConnectTime() +
+                        " (input queue: " + client.getInputQueueSize() +
+                        ", output queue: " + client.getPendingOutputBytes() + " bytes, " +
+                        client.getHeartbeat() + ")");
             }
         }
         else writeConsole("No client connected");
@@ -87,11 +123,59 @@ public class ConsoleHandler implements Runnable {
         msg += "    help - command list \n";
         msg += "    quit - shutdown server \n";
         msg += "    show sessions - show list of current client sessions \n";
+        msg += "    show engine - show server engine (event loops) statistics \n";
+        msg += "    show pool - show buffer pool statistics \n";
+        msg += "    show stats - show network metrics and rates since previous call \n";
+        msg += "    show lanes - show processing lanes: weights, queued tasks and queue wait per lane \n";
+        msg += "    show topics - show pub/sub topics: subscribers, deliveries and fan-out lag \n";
+        msg += "    send <id> <text> - send text message to client by ID \n";
         msg += "    something else... \n";
 
         this.writeConsole(msg);
     }
 
+    private void printEngineStats() {
+        ServerEngine engine = nioServer.getEngine();
+        if(engine != null)
+            this.writeConsole(engine.getStats());
+        else
+            this.writeConsole("Server is not started");
+    }
+
+    private void printPoolStats() {
+        this.writeConsole(BufferPool.getStats());
+    }
+
+    private void printStats() {
+        this.writeConsole(Metrics.getStats());
+        this.writeConsole(FrameCompression.getStats());
+    }
+
+    // Отправляет текстовое сообщение клиенту по ИД
+    private void sendToClient(String args) {
+        int pos = args.indexOf(' ');
+        int clientId;
+        try {
+            clientId = Integer.parseInt(pos > 0 ? args.substring(0, pos) : args);
+        } catch (NumberFormatException e) {
+            this.writeConsole("Usage: send <id> <text>");
+            return;
+        }
+        String text = pos > 0 ? args.substring(pos + 1) : "";
+        if(ClientManager.sendTo(clientId, new Packet100Message(text)))
+            this.writeConsole("Sent to client " + clientId);
+        else
+            this.writeConsole("Client " + clientId + " is not connected or not ready");
+    }
+
+    private void printLaneStats() {
+        this.writeConsole(ClientManager.getLaneStats());
+    }
+
+    private void printTopics() {
+        this.writeConsole(TopicRegistry.getStats());
+    }
+
     private void printCurrentConfig() {
         AppSettings.getInstance().printConfig();
     }
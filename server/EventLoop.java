@@ -0,0 +1,213 @@
+package server;
+
+import network.Client;
+import network.ClientBase;
+import network.Heartbeat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Рабочий цикл событий (worker).
+// Имеет собственный селектор и обслуживает чтение/запись закреплённых за ним каналов клиентов.
+// Задачи из других потоков (регистрация канала, смена флагов ключа) передаются через execute()
+// и выполняются в потоке цикла.
+public class EventLoop implements Runnable, Executor {
+    private static final Logger logger = LoggerFactory.getLogger(EventLoop.class.getName());
+
+    private final int loopId; // номер цикла
+    private final Selector selector; // селектор цикла
+    private final SelectStrategy selectStrategy; // стратегия ожидания событий
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // задачи для выполнения в потоке цикла
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false); // признак того, что селектор уже разбужен
+    private final AtomicInteger pendingChannels = new AtomicInteger(0); // кол-во каналов, ожидающих регистрации
+    private static final int TIMER_WHEEL_SIZE = 512; // кол-во ячеек колеса таймеров
+    private final TimingWheel timers; // таймеры каналов: неактивность, ping, лимит скорости (null - таймеры не нужны)
+    private volatile int channelCount = 0; // кол-во каналов закреплённых за циклом
+    private volatile boolean running = false; // признак работы цикла
+    private Thread thread; // поток цикла
+
+    // статистика цикла (пишется только потоком цикла, кроме wakeups)
+    private volatile long selectCount = 0; // кол-во проходов цикла
+    private volatile long emptySelectCount = 0; // проходы без готовых ключей и задач
+    private final LongAdder wakeupCount = new LongAdder(); // кол-во вызовов selector.wakeup()
+    private volatile long waitNanos = 0; // время ожидания в select
+    private volatile long busyNanos = 0; // время обработки событий и задач
+
+    public EventLoop(int loopId, SelectStrategy selectStrategy) throws IOException {
+        this.loopId = loopId;
+        this.selector = Selector.open();
+        this.selectStrategy = selectStrategy;
+        this.timers = IdleMonitor.isEnabled() || Heartbeat.isEnabled() || ClientBase.isRateLimited() ?
+                new TimingWheel(IdleMonitor.getTickMillis(), TIMER_WHEEL_SIZE) : null;
+    }
+
+    public int getLoopId() {
+        return loopId;
+    }
+
+    // Возвращает кол-во каналов закреплённых за циклом (используется для балансировки)
+    public int getChannelCount() {
+        return channelCount + pendingChannels.get();
+    }
+
+    // Запускает цикл в отдельном потоке
+    public void start() {
+        running = true;
+        thread = new Thread(this, "EventLoop-" + loopId);
+        thread.setDaemon(false);
+        thread.start();
+    }
+
+    // Останавливает цикл и ждёт завершения потока
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        if(thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                logger.error("EventLoop-{} join interrupted", loopId);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Передаёт принятый канал в цикл. Вызывается из потока acceptor.
+    // Регистрация в селекторе выполняется в потоке цикла
+    public void register(SocketChannel clientChannel) {
+        pendingChannels.incrementAndGet();
+        execute(() -> registerChannel(clientChannel));
+    }
+
+    // Ставит задачу в очередь цикла и будит селектор.
+    // Повторные вызовы до пробуждения селектора не вызывают лишних wakeup()
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread && wakeupPending.compareAndSet(false, true)) {
+            wakeupCount.increment();
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        logger.debug("EventLoop-{} is started", loopId);
+        try {
+            long startTime = System.nanoTime();
+            while (running) {
+                // ждём событий от клиентов (не дольше следующего тика таймеров)
+                long maxWait = timers != null ? timers.nextTickDelay(startTime) : 0;
+                int selected = selectStrategy.select(selector, !tasks.isEmpty(), maxWait);
+                long selectTime = System.nanoTime();
+                waitNanos += selectTime - startTime;
+                selectCount++;
+
+                wakeupPending.set(false);
+                boolean hasTasks = runTasks();
+                if (selected == 0 && !hasTasks)
+                    emptySelectCount++;
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if (!key.isValid()) { // если ключ истёк прерываем текущую итерацию
+                        continue;
+                    }
+
+                    // Если установлен флаг OP_READ (читаем вх. сообщения)
+                    if (key.isValid() && key.isReadable()) {
+                        ClientManager.readClientChannel(key);
+                        // чтение приостановлено по лимиту скорости - возобновим после пополнения токенов
+                        Client client = ClientManager.getClientByKey(key);
+                        if (timers != null && client != null && client.isReadThrottled())
+                            ThrottleTimer.resumeLater(timers, client);
+                    }
+
+                    // Если установлен флаг OP_WRITE (отправляем сообщения)
+                    if (key.isValid() && key.isWritable()) {
+                        ClientManager.writeClientChannel(key);
+                    }
+                }
+                channelCount = selector.keys().size();
+                if (timers != null)
+                    timers.advance(System.nanoTime()); // закрываем неактивные подключения, отправляем ping
+
+                startTime = System.nanoTime();
+                busyNanos += startTime - selectTime;
+            }
+        } catch (IOException e) {
+            logger.error("Exception: ", e);
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.error("Exception: ", e);
+            }
+            logger.debug("EventLoop-{} is stopped", loopId);
+        }
+    }
+
+    // Возвращает статистику цикла в виде строки
+    public String getStats() {
+        long selects = selectCount;
+        long wait = waitNanos;
+        long busy = busyNanos;
+        long total = wait + busy;
+        return "EventLoop-" + loopId + " [" + selectStrategy.getName() + "]:" +
+                " channels=" + getChannelCount() +
+                " selects=" + selects +
+                " empty=" + emptySelectCount +
+                " wakeups=" + wakeupCount.sum() +
+                (timers != null ? " timers=" + timers.size() : "") +
+                " avg loop=" + (selects > 0 ? total / selects / 1000 : 0) + " us" +
+                " busy=" + (total > 0 ? busy * 100 / total : 0) + "%";
+    }
+
+    // Выполняет задачи, переданные из других потоков. Возвращает true, если были задачи
+    private boolean runTasks() {
+        boolean result = false;
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            result = true;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("EventLoop-{} task error: ", loopId, e);
+            }
+        }
+        return result;
+    }
+
+    // Регистрирует в селекторе канал, переданный из потока acceptor
+    private void registerChannel(SocketChannel clientChannel) {
+        pendingChannels.decrementAndGet();
+        try {
+            // регистрируем канал клиента в селекторе и устанавливаем флаг ожидания чтения данных
+            // (канал, принятый до остановки сервера, регистрируется без чтения)
+            SelectionKey clientKey = clientChannel.register(selector,
+                    ClientBase.isReadingStopped() ? 0 : SelectionKey.OP_READ);
+            Client client = ClientManager.registerNewClient(clientKey, this);
+            if (client != null && IdleMonitor.isEnabled())
+                IdleMonitor.watch(timers, client);
+            if (client != null && Heartbeat.isEnabled())
+                HeartbeatTimer.watch(timers, client);
+        } catch (ClosedChannelException e) {
+            logger.debug("Client channel closed before registration");
+        }
+    }
+}
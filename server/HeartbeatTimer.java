@@ -0,0 +1,34 @@
+package server;
+
+import network.Client;
+import network.Heartbeat;
+
+// Отправка ping клиентам с интервалом Heartbeat.getInterval().
+// Таймеры сессий хранятся в колесе таймеров цикла событий и переставляются после каждой отправки.
+// Ответ pong обрабатывается при чтении канала и обновляет оценку RTT клиента (ClientBase.getHeartbeat())
+final class HeartbeatTimer {
+    private HeartbeatTimer() {
+    }
+
+    // Начинает отправку ping клиенту (вызывается в потоке цикла при регистрации канала)
+    static void watch(TimingWheel wheel, Client client) {
+        wheel.schedule(new PingTimeout(client), System.nanoTime() + Heartbeat.getInterval() * 1_000_000L);
+    }
+
+    // Таймер клиента. Закрытый клиент снимается при срабатывании таймера
+    private static final class PingTimeout extends TimingWheel.Timeout {
+        private final Client client;
+
+        PingTimeout(Client client) {
+            this.client = client;
+        }
+
+        @Override
+        void expire(TimingWheel wheel, long now) {
+            if (!client.isOpen())
+                return;
+            client.sendPing();
+            wheel.schedule(this, now + Heartbeat.getInterval() * 1_000_000L);
+        }
+    }
+}
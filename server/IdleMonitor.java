@@ -0,0 +1,107 @@
+package server;
+
+import network.Client;
+import network.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Закрытие неактивных подключений по таймаутам.
+//   read  - нет входящих данных дольше таймаута (в т.ч. полуоткрытые подключения)
+//   write - нет отправки данных клиенту дольше таймаута
+//   all   - нет ни чтения, ни записи дольше таймаута
+// Таймеры сессий хранятся в колесе таймеров цикла событий. Чтение и запись только обновляют время активности
+// клиента; при срабатывании таймер проверяет время активности и, если клиент был активен,
+// переставляется на новый срок (O(1)), иначе подключение закрывается через closeChannel()
+final class IdleMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(IdleMonitor.class.getName());
+
+    private static volatile long readTimeout = 0; // таймаут чтения, нс (0 - отключён)
+    private static volatile long writeTimeout = 0; // таймаут записи, нс (0 - отключён)
+    private static volatile long allTimeout = 0; // общий таймаут активности, нс (0 - отключён)
+    private static volatile long tickMillis = 100; // длительность тика колеса, мс
+
+    static final LongAdder readIdleClosed = Metrics.counter("idleReadClosed"); // закрыто по таймауту чтения
+    static final LongAdder writeIdleClosed = Metrics.counter("idleWriteClosed"); // закрыто по таймауту записи
+    static final LongAdder allIdleClosed = Metrics.counter("idleAllClosed"); // закрыто по общему таймауту
+
+    private IdleMonitor() {
+    }
+
+    // Устанавливает таймауты в мс (0 - таймаут отключён) и длительность тика колеса таймеров циклов событий.
+    // Действует для циклов событий, созданных после вызова
+    static void configure(long readMillis, long writeMillis, long allMillis, long tick) {
+        readTimeout = Math.max(readMillis, 0) * 1_000_000L;
+        writeTimeout = Math.max(writeMillis, 0) * 1_000_000L;
+        allTimeout = Math.max(allMillis, 0) * 1_000_000L;
+        if (tick > 0)
+            tickMillis = tick;
+    }
+
+    // Признак того, что включён хотя бы один таймаут
+    static boolean isEnabled() {
+        return readTimeout > 0 || writeTimeout > 0 || allTimeout > 0;
+    }
+
+    // Длительность тика колеса таймеров, мс
+    static long getTickMillis() {
+        return tickMillis;
+    }
+
+    // Начинает отслеживание клиента (вызывается в потоке цикла при регистрации канала)
+    static void watch(TimingWheel wheel, Client client) {
+        IdleTimeout timeout = new IdleTimeout(client);
+        wheel.schedule(timeout, timeout.nextDeadline());
+    }
+
+    // Таймер клиента. Закрытый клиент снимается при срабатывании таймера (отдельное снятие не нужно)
+    private static final class IdleTimeout extends TimingWheel.Timeout {
+        private final Client client;
+
+        IdleTimeout(Client client) {
+            this.client = client;
+        }
+
+        // Ближайший срок по времени последней активности клиента
+        long nextDeadline() {
+            long lastRead = client.getLastReadTime();
+            long lastWrite = client.getLastWriteTime();
+            long deadline = Long.MAX_VALUE;
+            if (readTimeout > 0)
+                deadline = Math.min(deadline, lastRead + readTimeout);
+            if (writeTimeout > 0)
+                deadline = Math.min(deadline, lastWrite + writeTimeout);
+            if (allTimeout > 0)
+                deadline = Math.min(deadline, Math.max(lastRead, lastWrite) + allTimeout);
+            return deadline;
+        }
+
+        @Override
+        void expire(TimingWheel wheel, long now) {
+            if (!client.isOpen())
+                return;
+            long lastRead = client.getLastReadTime();
+            long lastWrite = client.getLastWriteTime();
+            String reason = null;
+            if (readTimeout > 0 && now - lastRead >= readTimeout) {
+                reason = "read";
+                readIdleClosed.increment();
+            }
+            else if (writeTimeout > 0 && now - lastWrite >= writeTimeout) {
+                reason = "write";
+                writeIdleClosed.increment();
+            }
+            else if (allTimeout > 0 && now - Math.max(lastRead, lastWrite) >= allTimeout) {
+                reason = "all";
+                allIdleClosed.increment();
+            }
+            if (reason == null) {
+                wheel.schedule(this, nextDeadline()); // клиент был активен - переносим срок
+                return;
+            }
+            logger.info("Client (ID={}) is idle ({} timeout), closing connection", client.getClientId(), reason);
+            ClientManager.closeClientChannel(client);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package server;
+
+import network.PacketLanes;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Очередь задач исполнителя обработки с полосами приоритета (PacketLanes).
+// Задача попадает в полосу PacketLanes.Task.getLane(), остальные задачи - в INTERACTIVE.
+// Полосы обслуживаются взвешенным циклическим обходом (weighted round robin): при наличии задач во всех полосах
+// полоса i получает weights[i] выборок за круг, т.е. массовые данные не вытесняют управляющие сообщения,
+// но и сами не останавливаются. Защита от голодания: если первая задача полосы с приоритетом ниже
+// обслуживаемой ждёт дольше starvation, она выбирается вне очереди (самая старая из таких),
+// но не чаще одного раза за круг обхода - иначе при старом хвосте очередь вырождается в FIFO
+// и новые управляющие сообщения ждут за всеми старыми задачами.
+// Для каждой полосы считается время ожидания задач в очереди (кол-во, среднее, максимум)
+final class LaneQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+    private static final int[] DEFAULT_WEIGHTS = {8, 4, 1};
+
+    // задача в очереди и время её постановки
+    private static final class Entry {
+        final Runnable task;
+        final long enqueueTime;
+
+        Entry(Runnable task, long enqueueTime) {
+            this.task = task;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<Entry>[] lanes = new ArrayDeque[PacketLanes.LANE_COUNT];
+    private final int[] weights = DEFAULT_WEIGHTS.clone(); // выборок за круг обхода
+    private long starvationNanos = 100_000_000L; // макс. ожидание до выборки вне очереди (0 - отключено)
+    private int currentLane = 0; // полоса, обслуживаемая в текущем круге
+    private int credit = DEFAULT_WEIGHTS[0]; // оставшиеся выборки текущей полосы
+    private boolean promotedInRound = false; // признак выборки вне очереди в текущем круге обхода
+    private int count = 0; // кол-во задач во всех полосах
+
+    // статистика ожидания по полосам (изменяется под блокировкой)
+    private final long[] dequeued = new long[PacketLanes.LANE_COUNT];
+    private final long[] waitNanos = new long[PacketLanes.LANE_COUNT];
+    private final long[] maxWaitNanos = new long[PacketLanes.LANE_COUNT];
+    private final long[] promoted = new long[PacketLanes.LANE_COUNT]; // выбрано по защите от голодания
+
+    LaneQueue() {
+        for (int i = 0; i < lanes.length; i++)
+            lanes[i] = new ArrayDeque<>();
+    }
+
+    // Устанавливает веса полос ("8,4,1"; ошибочные и неположительные значения - по умолчанию)
+    // и макс. ожидание задачи до выборки вне очереди, мс (0 - отключено)
+    void configure(String laneWeights, long starvationMillis) {
+        int[] parsed = DEFAULT_WEIGHTS.clone();
+        if (laneWeights != null) {
+            String[] items = laneWeights.split(",");
+            for (int i = 0; i < items.length && i < parsed.length; i++) {
+                try {
+                    int weight = Integer.parseInt(items[i].trim());
+                    if (weight > 0)
+                        parsed[i] = weight;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        lock.lock();
+        try {
+            System.arraycopy(parsed, 0, weights, 0, weights.length);
+            credit = weights[currentLane];
+            starvationNanos = Math.max(starvationMillis, 0) * 1_000_000L;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int laneOf(Runnable task) {
+        if (task instanceof PacketLanes.Task) {
+            int lane = ((PacketLanes.Task) task).getLane();
+            if (lane >= 0 && lane < PacketLanes.LANE_COUNT)
+                return lane;
+        }
+        return PacketLanes.INTERACTIVE;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        if (task == null)
+            throw new NullPointerException();
+        Entry entry = new Entry(task, System.nanoTime());
+        lock.lock();
+        try {
+            lanes[laneOf(task)].addLast(entry);
+            count++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+        return offer(task);
+    }
+
+    @Override
+    public void put(Runnable task) {
+        offer(task);
+    }
+
+    // Выбирает следующую задачу (под блокировкой, count > 0)
+    private Runnable dequeue() {
+        long now = System.nanoTime();
+        // круг обхода: полоса обслуживается, пока есть задачи и выборки, затем ход переходит к следующей
+        while (credit <= 0 || lanes[currentLane].isEmpty()) {
+            currentLane = (currentLane + 1) % lanes.length;
+            credit = weights[currentLane];
+            if (currentLane == 0)
+                promotedInRound = false; // начался новый круг
+        }
+        int lane = currentLane;
+        if (starvationNanos > 0 && !promotedInRound) {
+            // вне очереди - только полосы ниже обслуживаемой, чтобы не вытеснять более приоритетные задачи
+            long oldest = now - starvationNanos;
+            for (int i = currentLane + 1; i < lanes.length; i++) {
+                Entry head = lanes[i].peekFirst();
+                if (head != null && head.enqueueTime - oldest <= 0) {
+                    oldest = head.enqueueTime;
+                    lane = i;
+                }
+            }
+        }
+        if (lane != currentLane) {
+            promotedInRound = true;
+            promoted[lane]++;
+        }
+        else
+            credit--;
+        Entry entry = lanes[lane].pollFirst();
+        count--;
+        long wait = now - entry.enqueueTime;
+        dequeued[lane]++;
+        waitNanos[lane] += wait;
+        if (wait > maxWaitNanos[lane])
+            maxWaitNanos[lane] = wait;
+        return entry.task;
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return count > 0 ? dequeue() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0)
+                    return null;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0)
+                notEmpty.await();
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Первая задача в порядке приоритета полос (без учёта обхода)
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            for (ArrayDeque<Entry> lane : lanes) {
+                Entry head = lane.peekFirst();
+                if (head != null)
+                    return head.task;
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean remove(Object task) {
+        if (task == null)
+            return false;
+        lock.lock();
+        try {
+            for (ArrayDeque<Entry> lane : lanes) {
+                for (Iterator<Entry> it = lane.iterator(); it.hasNext(); ) {
+                    if (it.next().task.equals(task)) {
+                        it.remove();
+                        count--;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        if (c == this)
+            throw new IllegalArgumentException();
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && count > 0) {
+                c.add(dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Итератор по снимку очереди (в порядке приоритета полос), удаление не поддерживается
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot = new ArrayList<>();
+        lock.lock();
+        try {
+            for (ArrayDeque<Entry> lane : lanes) {
+                for (Entry entry : lane)
+                    snapshot.add(entry.task);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    // Статистика полос: задач в очереди, выбрано, среднее и макс. ожидание, выбрано по защите от голодания
+    String getStats() {
+        StringBuilder sb = new StringBuilder();
+        lock.lock();
+        try {
+            sb.append("Processing lanes (starvation limit ").append(starvationNanos / 1_000_000).append(" ms):");
+            for (int i = 0; i < lanes.length; i++) {
+                sb.append(String.format("%n    %-11s weight=%d queued=%d dequeued=%d wait avg=%.3f ms max=%.3f ms promoted=%d",
+                        PacketLanes.getName(i), weights[i], lanes[i].size(), dequeued[i],
+                        dequeued[i] > 0 ? waitNanos[i] / 1e6 / dequeued[i] : 0.0,
+                        maxWaitNanos[i] / 1e6, promoted[i]));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return sb.toString();
+    }
+}
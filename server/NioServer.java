@@ -1,5 +1,14 @@
 package server;
 
+import network.BufferPool;
+import network.ChannelWriter;
+import network.Client;
+import network.ClientBase;
+import network.FrameCompression;
+import network.Heartbeat;
+import network.Metrics;
+import network.PacketLanes;
+import network.TokenBucket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,6 +21,9 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class NioServer implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(NioServer.class.getName());
@@ -22,6 +34,13 @@ public class NioServer implements Runnable {
     private enum State {STOPPED, STOPPING, RUNNING} // возможные состояния сервера
     private static final AtomicReference<NioServer.State> state = new AtomicReference<>(NioServer.State.STOPPED); // переключатель состояния сервера
 
+    private volatile ServerEngine engine; // движок, обслуживающий каналы клиентов
+    private volatile Selector selector; // селектор потока сервера (ожидание подключений)
+    private volatile Consumer<String> progressListener = null; // вывод хода остановки (например, в консоль)
+
+    private static final long DRAIN_POLL_INTERVAL = 20; // интервал проверки фаз остановки, мс
+    private static final long DRAIN_REPORT_INTERVAL = 1000; // интервал вывода хода остановки, мс
+
     public NioServer(int port) {
         this("localhost", port);
     }
@@ -40,21 +59,55 @@ public class NioServer implements Runnable {
             return;
         }
 
-        Selector selector = null;   // селектор
         ServerSocketChannel serverChannel = null; // канал сервера
 
         try {
+            AppSettings config = AppSettings.getInstance();
+            BufferPool.configure(config.NET_POOL_THREAD_CACHE, config.NET_POOL_MAX_POOLED); // настраиваем пул буферов
+            ChannelWriter.configureWatermarks(config.NET_WATERMARK_HIGH, config.NET_WATERMARK_LOW, config.NET_MEMORY_CAP);
+            ClientBase.configureMaxPacketSize(config.NET_MAX_PACKET_SIZE);
+            Client.configureFileRoot(config.SERVER_FILES_DIR);
+            IdleMonitor.configure(config.SERVER_IDLE_READ, config.SERVER_IDLE_WRITE, config.SERVER_IDLE_ALL,
+                    config.SERVER_IDLE_TICK);
+            Heartbeat.configure(config.SERVER_HEARTBEAT_INTERVAL);
+            ClientBase.configureRateLimits(config.NET_RATE_PACKETS, config.NET_RATE_PACKETS_BURST,
+                    config.NET_RATE_BYTES, config.NET_RATE_BYTES_BURST);
+            PacketLanes.configure(config.NET_LANES_TYPES);
+            ClientManager.configureLanes(config.SERVER_LANES_WEIGHTS, config.SERVER_LANES_STARVATION);
+            ChannelWriter.configureBatching(config.NET_BATCH_ENABLED, config.NET_BATCH_MAX_SIZE);
+            FrameCompression.configure(config.NET_COMPRESSION_ENABLED, config.NET_COMPRESSION_THRESHOLD,
+                    config.NET_COMPRESSION_LEVEL);
+            if(config.METRICS_JMX)
+                Metrics.registerMBean(); // публикуем метрики через JMX
+            engine = createEngine(config);
+            engine.start(); // запускаем движок
+
             selector = Selector.open(); // создаём селектор
             serverChannel = ServerSocketChannel.open(); // создаём канал сервера
             serverChannel.socket().bind(new InetSocketAddress(IP, PORT)); // закускаем сервер и слушаем порт
             serverChannel.configureBlocking(false); // устанавливаем не блокирующий режим
-            serverChannel.register(selector, SelectionKey.OP_ACCEPT); // регистрируем канал сервера в селекторе и устанавливаем флаг ожидания запроса на соединение
+            SelectionKey acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT); // регистрируем канал сервера в селекторе и устанавливаем флаг ожидания запроса на соединение
+            // лимит скорости приёма подключений (null - без лимита)
+            TokenBucket acceptBucket = config.SERVER_ACCEPT_RATE > 0 ?
+                    new TokenBucket(config.SERVER_ACCEPT_RATE, config.SERVER_ACCEPT_BURST) : null;
+            long acceptResumeTime = 0; // время возобновления приёма подключений (0 - приём не приостановлен)
 
-            logger.info("Server is started on {}:{}", this.IP, this.PORT);
+            logger.info("Server is started on {}:{} (engine: {})", this.IP, this.PORT, engine.getName());
 
-            // пока переключатель состояния в RUNNING продолжаем слушать порт
+            // пока переключатель состояния в RUNNING продолжаем слушать порт.
+            // Поток сервера только принимает подключения и передаёт их движку
             while (state.get() == NioServer.State.RUNNING) {
-                selector.select(100); // ждём входящих сообщений от клиентов
+                if (acceptResumeTime == 0) {
+                    selector.select(); // ждём входящих подключений (shutdown() будит селектор)
+                }
+                else {
+                    // приём приостановлен по лимиту: ждём пополнения токенов
+                    selector.select(Math.max((acceptResumeTime - System.nanoTime()) / 1_000_000, 1));
+                    if (System.nanoTime() - acceptResumeTime >= 0) {
+                        acceptResumeTime = 0;
+                        acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+                    }
+                }
                 Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); // получеам итератор массива ключей подключения
 
                 while (iterator.hasNext()) {
@@ -66,40 +119,41 @@ public class NioServer implements Runnable {
                         continue;
                     }
 
-                    if (key.isValid() && key.isConnectable()) { // не используется в однопоточной версии
-                        ((SocketChannel) key.channel()).finishConnect();
-                    }
-
                     // Если установлен флаг OP_ACCEPT (ждем входящих подключений)
                     if (key.isValid() && key.isAcceptable()) {
+                        long now = System.nanoTime();
+                        if (acceptBucket != null && !acceptBucket.tryAcquire(1, now)) {
+                            // Лимит подключений исчерпан. Новые подключения ждут в очереди ОС (backlog),
+                            // приём возобновится после пополнения токенов
+                            key.interestOps(0);
+                            acceptResumeTime = now + Math.max(acceptBucket.nanosUntil(1, now), 1);
+                            Metrics.acceptThrottles.increment();
+                            continue;
+                        }
                         SocketChannel clientChannel = serverChannel.accept(); // создаём канал с клиентом
-                        clientChannel.configureBlocking(false); // устанавливаем не блокирующий режим
+                        if (clientChannel == null) continue;
                         clientChannel.socket().setTcpNoDelay(true); // отключаем алгоритм оптимизации
-                        // регистрируем канал клиента в селекторе и устанавливаем флаг ожидания чтения данных
-                        SelectionKey clientKey = clientChannel.register(selector, SelectionKey.OP_READ);
-                        ClientManager.registerNewClient(clientKey);
-                    }
-
-                    // Если установлен флаг OP_READ (читаем вх. сообщения)
-                    if (key.isValid() && key.isReadable()) {
-                        ClientManager.readClientChannel(key);
-                    }
-
-                    // Если установлен флаг OP_WRITE (отправляем сообщения)
-                    if (key.isValid() && key.isWritable()) {
-                        ClientManager.writeClientChannel(key);
+                        Metrics.connectionsAccepted.increment();
+                        engine.register(clientChannel); // передаём канал клиента движку
                     }
                 }
             }
+            // остановка по shutdown(): подключения закрываются после обработки и отправки ответов
+            this.drain(serverChannel, config.SERVER_SHUTDOWN_TIMEOUT);
         } catch (BindException e) {
             logger.error("Port already used: ", e);
         } catch (IOException e) {
             logger.error("Exception: ", e);
         } finally { // в любом случае была ошибка или нет гасим сервер
             try {
-                selector.close(); // закрываем селектор
-                serverChannel.socket().close(); // закрываем сокет канала сервера
-                serverChannel.close(); // закрываем канал сервера
+                if(selector != null)
+                    selector.close(); // закрываем селектор
+                if(serverChannel != null) {
+                    serverChannel.socket().close(); // закрываем сокет канала сервера
+                    serverChannel.close(); // закрываем канал сервера
+                }
+                if(engine != null)
+                    engine.stop(); // останавливаем движок
                 ClientManager.closeAllClientChannels();
 
                 state.set(NioServer.State.STOPPED); // устанавливает статус сервера в STOPPED
@@ -110,11 +164,104 @@ public class NioServer implements Runnable {
         }
     }
 
+    // Создаёт движок сервера по настройкам: selector (по умолчанию) или thread (поток на подключение)
+    private ServerEngine createEngine(AppSettings config) {
+        if("thread".equalsIgnoreCase(config.SERVER_ENGINE))
+            return new ThreadPerConnectionEngine();
+        return new SelectorEngine(config.SERVER_WORKER_COUNT, config.SERVER_WORKER_BALANCE,
+                config.SERVER_SELECT_STRATEGY, config.SERVER_SELECT_TIMEOUT, config.SERVER_SELECT_SPIN_COUNT);
+    }
+
     public void setState(State state) {
         NioServer.state.set(state);
     }
 
     public void shutdown() {
+        this.shutdown(null);
+    }
+
+    // Останавливает сервер. Ход остановки выводится в лог и в listener (null - только в лог)
+    public void shutdown(Consumer<String> listener) {
+        this.progressListener = listener;
         this.setState(State.STOPPING);
+        Selector selector = this.selector;
+        if(selector != null)
+            selector.wakeup();
+    }
+
+    // Плавная остановка сервера по фазам:
+    //   1. прекращение приёма подключений (закрытие канала сервера)
+    //   2. прекращение чтения каналов клиентов
+    //   3. завершение обработки уже прочитанных сообщений
+    //   4. отправка ответов из очередей отправки
+    //   5. закрытие подключений (в finally метода run)
+    // Фазы 3 и 4 ограничены общим сроком timeoutMillis. По истечении срока подключения закрываются
+    // с необработанными сообщениями и неотправленными данными
+    private void drain(ServerSocketChannel serverChannel, long timeoutMillis) throws IOException {
+        long startTime = System.nanoTime();
+        long deadline = startTime + Math.max(timeoutMillis, 0) * 1_000_000L;
+
+        serverChannel.close();
+        this.reportProgress("Shutdown 1/5: accept stopped");
+
+        ClientManager.stopReading();
+        this.reportProgress("Shutdown 2/5: reading stopped (" + ClientManager.getSessionCount() + " sessions)");
+
+        boolean done = this.waitFor(deadline,
+                () -> ClientManager.getPendingTaskCount() == 0 && ClientManager.getUnprocessedPacketCount() == 0,
+                () -> "Shutdown 3/5: processing: " + ClientManager.getPendingTaskCount() + " tasks, " +
+                        ClientManager.getUnprocessedPacketCount() + " packets pending");
+        if(done) {
+            this.reportProgress("Shutdown 3/5: processing finished");
+            done = this.waitFor(deadline,
+                    () -> ClientManager.getPendingOutputCount() == 0,
+                    () -> "Shutdown 4/5: flushing: " + ClientManager.getPendingOutputCount() + " sessions, " +
+                            ClientManager.getPendingOutputBytes() + " bytes pending");
+            if(done)
+                this.reportProgress("Shutdown 4/5: output flushed");
+        }
+        if(!done) {
+            this.reportProgress("Shutdown: deadline " + timeoutMillis + " ms reached: " +
+                    ClientManager.getUnprocessedPacketCount() + " packets unprocessed, " +
+                    ClientManager.getPendingOutputBytes() + " bytes unsent in " +
+                    ClientManager.getPendingOutputCount() + " sessions");
+        }
+        this.reportProgress("Shutdown 5/5: closing " + ClientManager.getSessionCount() + " sessions (drained in " +
+                (System.nanoTime() - startTime) / 1_000_000 + " ms)");
+    }
+
+    // Ждёт выполнения условия до срока deadline, выводя ход ожидания раз в DRAIN_REPORT_INTERVAL.
+    // Возвращает false, если срок истёк или ожидание прервано
+    private boolean waitFor(long deadline, BooleanSupplier condition, Supplier<String> status) {
+        long nextReport = System.nanoTime() + DRAIN_REPORT_INTERVAL * 1_000_000L;
+        while (!condition.getAsBoolean()) {
+            long now = System.nanoTime();
+            if(now - deadline >= 0)
+                return false;
+            if(now - nextReport >= 0) {
+                this.reportProgress(status.get());
+                nextReport = now + DRAIN_REPORT_INTERVAL * 1_000_000L;
+            }
+            try {
+                Thread.sleep(DRAIN_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Выводит ход остановки в лог и в listener, переданный в shutdown()
+    private void reportProgress(String message) {
+        logger.info(message);
+        Consumer<String> listener = this.progressListener;
+        if(listener != null)
+            listener.accept(message);
+    }
+
+    // Возвращает движок сервера (null, если сервер не запущен)
+    public ServerEngine getEngine() {
+        return engine;
     }
 }
\ No newline at end of file
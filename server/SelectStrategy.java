@@ -0,0 +1,112 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+// Стратегия ожидания событий селектора в цикле событий.
+//   blocking - select() без таймаута, цикл будят явно через wakeup()
+//   timed    - select(timeout)
+//   spin     - selectNow() в цикле (busy-spin, минимальная задержка, занимает ядро целиком)
+//   hybrid   - spinCount раз selectNow(), затем блокирующий select()
+// Блокирующее ожидание ограничивается maxWait (до следующего тика таймеров цикла)
+public abstract class SelectStrategy {
+
+    // Ожидает события. hasTasks - в очереди цикла есть задачи, блокироваться нельзя.
+    // maxWait - макс. время блокировки, мс (0 - без ограничения).
+    // Возвращает кол-во готовых ключей
+    public abstract int select(Selector selector, boolean hasTasks, long maxWait) throws IOException;
+
+    // Блокирующий select с ограничением времени (0 - без ограничения)
+    protected static int select(Selector selector, long maxWait) throws IOException {
+        return maxWait > 0 ? selector.select(maxWait) : selector.select();
+    }
+
+    // Название стратегии
+    public abstract String getName();
+
+    // Создаёт стратегию по названию из настроек (по умолчанию blocking)
+    public static SelectStrategy create(String name, long timeout, int spinCount) {
+        if("timed".equalsIgnoreCase(name))
+            return new Timed(timeout > 0 ? timeout : 100);
+        if("spin".equalsIgnoreCase(name))
+            return new BusySpin();
+        if("hybrid".equalsIgnoreCase(name))
+            return new Hybrid(spinCount > 0 ? spinCount : 1000);
+        return new Blocking();
+    }
+
+    // Блокирующее ожидание до события или wakeup()
+    private static final class Blocking extends SelectStrategy {
+        @Override
+        public int select(Selector selector, boolean hasTasks, long maxWait) throws IOException {
+            return hasTasks ? selector.selectNow() : select(selector, maxWait);
+        }
+
+        @Override
+        public String getName() {
+            return "blocking";
+        }
+    }
+
+    // Ожидание с таймаутом
+    private static final class Timed extends SelectStrategy {
+        private final long timeout; // таймаут ожидания, мс
+
+        private Timed(long timeout) {
+            this.timeout = timeout;
+        }
+
+        @Override
+        public int select(Selector selector, boolean hasTasks, long maxWait) throws IOException {
+            return hasTasks ? selector.selectNow() : selector.select(maxWait > 0 ? Math.min(timeout, maxWait) : timeout);
+        }
+
+        @Override
+        public String getName() {
+            return "timed (" + timeout + " ms)";
+        }
+    }
+
+    // Постоянный опрос без блокировки
+    private static final class BusySpin extends SelectStrategy {
+        @Override
+        public int select(Selector selector, boolean hasTasks, long maxWait) throws IOException {
+            return selector.selectNow();
+        }
+
+        @Override
+        public String getName() {
+            return "spin";
+        }
+    }
+
+    // Опрос без блокировки spinCount раз подряд, затем блокирующее ожидание.
+    // Экземпляр используется одним циклом событий
+    private static final class Hybrid extends SelectStrategy {
+        private final int spinCount; // кол-во пустых опросов до блокировки
+        private int spins = 0; // текущее кол-во пустых опросов подряд
+
+        private Hybrid(int spinCount) {
+            this.spinCount = spinCount;
+        }
+
+        @Override
+        public int select(Selector selector, boolean hasTasks, long maxWait) throws IOException {
+            int selected;
+            if(hasTasks || spins < spinCount) {
+                selected = selector.selectNow();
+                spins = selected > 0 || hasTasks ? 0 : spins + 1;
+            }
+            else {
+                selected = select(selector, maxWait);
+                spins = 0;
+            }
+            return selected;
+        }
+
+        @Override
+        public String getName() {
+            return "hybrid (" + spinCount + " spins)";
+        }
+    }
+}
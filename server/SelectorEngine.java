@@ -0,0 +1,87 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+// Движок на селекторах: N рабочих циклов событий, у каждого свой селектор.
+// Обработка сообщений выполняется в общем пуле потоков ClientManager
+public class SelectorEngine implements ServerEngine {
+    private final int workerCount; // кол-во рабочих циклов
+    private final boolean leastLoaded; // признак балансировки по наименее загруженному циклу
+    private final String selectStrategy; // стратегия ожидания событий (blocking | timed | spin | hybrid)
+    private final long selectTimeout; // таймаут для стратегии timed, мс
+    private final int selectSpinCount; // кол-во пустых опросов для стратегии hybrid
+
+    private EventLoop[] eventLoops; // рабочие циклы событий (чтение/запись каналов клиентов)
+    private int nextLoop = 0; // индекс следующего цикла при балансировке round-robin
+
+    // Конструктор. Кол-во циклов 0 - по кол-ву ядер процессора
+    public SelectorEngine(int workerCount, String balance,
+                          String selectStrategy, long selectTimeout, int selectSpinCount) {
+        this.workerCount = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+        this.leastLoaded = "leastloaded".equalsIgnoreCase(balance);
+        this.selectStrategy = selectStrategy;
+        this.selectTimeout = selectTimeout;
+        this.selectSpinCount = selectSpinCount;
+    }
+
+    // Создаёт и запускает рабочие циклы событий
+    @Override
+    public void start() throws IOException {
+        eventLoops = new EventLoop[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            // у каждого цикла свой экземпляр стратегии (стратегия может хранить состояние)
+            eventLoops[i] = new EventLoop(i, SelectStrategy.create(selectStrategy, selectTimeout, selectSpinCount));
+            eventLoops[i].start();
+        }
+    }
+
+    // Передаёт канал клиента рабочему циклу, он зарегистрирует его в своём селекторе
+    @Override
+    public void register(SocketChannel clientChannel) throws IOException {
+        clientChannel.configureBlocking(false); // устанавливаем не блокирующий режим
+        nextEventLoop().register(clientChannel);
+    }
+
+    // Останавливает рабочие циклы событий
+    @Override
+    public void stop() {
+        if(eventLoops == null) return;
+        for (EventLoop eventLoop : eventLoops) {
+            if(eventLoop != null)
+                eventLoop.stop();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "selector (" + workerCount + " event loops)";
+    }
+
+    // Статистика рабочих циклов
+    @Override
+    public String getStats() {
+        if(eventLoops == null) return "Engine is not started";
+        StringBuilder sb = new StringBuilder();
+        for (EventLoop eventLoop : eventLoops) {
+            if(sb.length() > 0) sb.append('\n');
+            sb.append(eventLoop.getStats());
+        }
+        return sb.toString();
+    }
+
+    // Выбирает рабочий цикл для нового подключения (round-robin или наименее загруженный)
+    private EventLoop nextEventLoop() {
+        if(leastLoaded) {
+            EventLoop result = eventLoops[0];
+            for (EventLoop eventLoop : eventLoops) {
+                if(eventLoop.getChannelCount() < result.getChannelCount())
+                    result = eventLoop;
+            }
+            return result;
+        }
+        EventLoop result = eventLoops[nextLoop];
+        nextLoop = (nextLoop + 1) % eventLoops.length;
+        return result;
+    }
+}
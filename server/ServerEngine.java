@@ -0,0 +1,23 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+// Движок сервера.
+// Обслуживает (чтение, обработка, запись) каналы клиентов, принятые потоком сервера
+public interface ServerEngine {
+    // Запускает движок
+    void start() throws IOException;
+
+    // Передаёт движку принятый канал клиента
+    void register(SocketChannel clientChannel) throws IOException;
+
+    // Останавливает движок
+    void stop();
+
+    // Название движка (для логов)
+    String getName();
+
+    // Статистика движка (для консоли)
+    String getStats();
+}
@@ -0,0 +1,203 @@
+package server;
+
+import network.Client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+// Индекс сессий по ИД клиента (int -> Client) без упаковки ключей в Integer.
+// Таблица разбита на сегменты, в каждом сегменте - открытая адресация с линейным пробированием.
+// Изменение - под блокировкой сегмента, поиск - оптимистичное чтение (StampedLock):
+// если во время поиска сегмент не менялся, блокировка не берётся
+final class SessionIndex {
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS; // кол-во сегментов
+    private static final int INITIAL_CAPACITY = 64; // начальный размер таблицы сегмента (степень двойки)
+    private static final int EMPTY = 0; // свободная ячейка (ИД клиента > 0)
+    private static final int REMOVED = -1; // удалённая ячейка (поиск продолжается дальше)
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    SessionIndex() {
+        for (int i = 0; i < SEGMENT_COUNT; i++)
+            segments[i] = new Segment();
+    }
+
+    // Перемешивает биты ИД: соседние ИД попадают в разные сегменты и ячейки
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> (32 - SEGMENT_BITS)];
+    }
+
+    // Возвращает сессию по ИД или null
+    Client get(int id) {
+        int hash = hash(id);
+        return segmentFor(hash).get(id, hash);
+    }
+
+    // Добавляет сессию, если ИД свободен. Возвращает false, если ИД уже занят
+    boolean putIfAbsent(int id, Client client) {
+        if (id <= 0)
+            throw new IllegalArgumentException("Client ID must be > 0: " + id);
+        int hash = hash(id);
+        return segmentFor(hash).putIfAbsent(id, hash, client);
+    }
+
+    // Удаляет сессию, если ИД принадлежит именно ей. Возвращает true, если сессия удалена
+    boolean remove(int id, Client client) {
+        int hash = hash(id);
+        return segmentFor(hash).remove(id, hash, client);
+    }
+
+    // Кол-во сессий
+    int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size;
+        return size;
+    }
+
+    // Снимок списка сессий
+    List<Client> values() {
+        List<Client> result = new ArrayList<>(size());
+        for (Segment segment : segments)
+            segment.collect(result);
+        return result;
+    }
+
+    // Сегмент индекса: таблица ИД и сессий одинакового размера
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private int[] keys = new int[INITIAL_CAPACITY];
+        private Client[] values = new Client[INITIAL_CAPACITY];
+        private volatile int size = 0; // кол-во сессий
+        private int used = 0; // кол-во занятых ячеек (сессии и удалённые)
+
+        Client get(int id, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            Client result = find(id, hash);
+            if (!lock.validate(stamp)) {
+                // сегмент менялся во время поиска - повторяем под блокировкой чтения
+                stamp = lock.readLock();
+                try {
+                    result = find(id, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return result;
+        }
+
+        // Поиск без блокировки: при оптимистичном чтении таблицы могут быть несогласованы,
+        // поэтому поиск ограничен размером таблицы, а результат проверяется validate()
+        private Client find(int id, int hash) {
+            int[] keys = this.keys;
+            Client[] values = this.values;
+            if (keys.length != values.length)
+                return null; // таблица перестраивается
+            int mask = keys.length - 1;
+            int index = hash & mask;
+            for (int probe = 0; probe < keys.length; probe++) {
+                int key = keys[index];
+                if (key == id)
+                    return values[index];
+                if (key == EMPTY)
+                    return null;
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        boolean putIfAbsent(int id, int hash, Client client) {
+            long stamp = lock.writeLock();
+            try {
+                if ((used + 1) * 4 > keys.length * 3)
+                    rehash();
+                int mask = keys.length - 1;
+                int index = hash & mask;
+                int free = -1; // первая удалённая ячейка на пути поиска
+                while (keys[index] != EMPTY) {
+                    if (keys[index] == id)
+                        return false;
+                    if (keys[index] == REMOVED && free == -1)
+                        free = index;
+                    index = (index + 1) & mask;
+                }
+                if (free == -1) {
+                    free = index;
+                    used++;
+                }
+                keys[free] = id;
+                values[free] = client;
+                size++;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean remove(int id, int hash, Client client) {
+            long stamp = lock.writeLock();
+            try {
+                int mask = keys.length - 1;
+                int index = hash & mask;
+                while (keys[index] != EMPTY) {
+                    if (keys[index] == id) {
+                        if (values[index] != client)
+                            return false;
+                        keys[index] = REMOVED;
+                        values[index] = null;
+                        size--;
+                        return true;
+                    }
+                    index = (index + 1) & mask;
+                }
+                return false;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void collect(List<Client> result) {
+            long stamp = lock.readLock();
+            try {
+                for (Client client : values) {
+                    if (client != null)
+                        result.add(client);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Перестраивает таблицу: удалённые ячейки освобождаются, при заполнении больше половины
+        // размер удваивается. Вызывается под блокировкой записи
+        private void rehash() {
+            int capacity = keys.length;
+            if (size * 2 >= capacity)
+                capacity *= 2;
+            int[] oldKeys = keys;
+            Client[] oldValues = values;
+            int[] newKeys = new int[capacity];
+            Client[] newValues = new Client[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] == null)
+                    continue;
+                int index = hash(oldKeys[i]) & mask;
+                while (newKeys[index] != EMPTY)
+                    index = (index + 1) & mask;
+                newKeys[index] = oldKeys[i];
+                newValues[index] = oldValues[i];
+            }
+            keys = newKeys;
+            values = newValues;
+            used = size;
+        }
+    }
+}
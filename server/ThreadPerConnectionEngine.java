@@ -0,0 +1,129 @@
+package server;
+
+import network.Client;
+import network.ClientBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Движок "поток на подключение".
+// Каждое подключение обслуживается в своём потоке блокирующим циклом чтение -> обработка -> запись.
+// На JDK 21+ используются виртуальные потоки, на более старых JDK - обычные потоки.
+// Подходит для обработчиков, выполняющих блокирующие операции.
+public class ThreadPerConnectionEngine implements ServerEngine {
+    private static final Logger logger = LoggerFactory.getLogger(ThreadPerConnectionEngine.class.getName());
+
+    private final AtomicBoolean running = new AtomicBoolean(false); // признак работы движка
+    private ThreadFactory threadFactory; // фабрика потоков подключений
+    private ExecutorService flushExecutor; // дозапись каналов, в которые пишут чужие потоки (рассылка тем)
+    private boolean virtualThreads = false; // признак использования виртуальных потоков
+
+    @Override
+    public void start() throws IOException {
+        threadFactory = createVirtualThreadFactory();
+        if(threadFactory != null) {
+            virtualThreads = true;
+        }
+        else {
+            logger.warn("Virtual threads are not available (JDK 21+ required). Using platform threads");
+            threadFactory = runnable -> new Thread(runnable);
+        }
+        // блокирующая запись медленному подписчику занимает поток дозаписи, а не поток публикации
+        ThreadFactory factory = threadFactory;
+        flushExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = factory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        running.set(true);
+    }
+
+    // Создаёт поток для обслуживания канала клиента
+    @Override
+    public void register(SocketChannel clientChannel) throws IOException {
+        if(!running.get()) {
+            clientChannel.close();
+            return;
+        }
+        clientChannel.configureBlocking(true); // поток подключения работает с каналом в блокирующем режиме
+        Client client = ClientManager.registerNewClient(clientChannel);
+        if(client == null) {
+            clientChannel.close();
+            return;
+        }
+        client.setFlushExecutor(flushExecutor);
+        Thread thread = threadFactory.newThread(() -> serve(client));
+        thread.setName("cThread-" + client.getClientId());
+        thread.start();
+    }
+
+    // Закрывает каналы клиентов. Потоки подключений завершатся после ошибки чтения
+    @Override
+    public void stop() {
+        running.set(false);
+        ClientManager.closeAllClientChannels();
+        if(flushExecutor != null)
+            flushExecutor.shutdown();
+    }
+
+    @Override
+    public String getName() {
+        return "thread-per-connection (" + (virtualThreads ? "virtual" : "platform") + " threads)";
+    }
+
+    @Override
+    public String getStats() {
+        return getName() + ": connections=" + ClientManager.getSessionCount();
+    }
+
+    // Цикл обслуживания подключения: чтение -> обработка -> запись
+    private void serve(Client client) {
+        while (running.get() && client.isOpen()) {
+            int status = client.read(); // блокируется до прихода данных
+            if(status == -1)
+                break;
+            if(status == 1 && client.processAndFlush() == -1)
+                break;
+            // остановка сервера: ответы на прочитанное уже отправлены (запись блокирующая)
+            if(ClientBase.isReadingStopped())
+                break;
+            if(client.isReadThrottled() && !this.waitForTokens(client))
+                break;
+        }
+        ClientManager.closeClientChannel(client);
+    }
+
+    // Ждёт пополнения токенов лимита скорости клиента (поток подключения просто не читает канал).
+    // Возвращает false, если ожидание прервано
+    private boolean waitForTokens(Client client) {
+        try {
+            long delay;
+            while ((delay = client.getThrottleDelay(System.nanoTime())) > 0)
+                Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        client.resumeReading();
+        return true;
+    }
+
+    // Возвращает фабрику виртуальных потоков (Thread.ofVirtual().factory()) или null, если JDK < 21
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package server;
+
+import network.Client;
+
+// Возобновление чтения клиента, приостановленного по лимиту скорости (ClientBase.consumeTokens).
+// Таймер ставится в колесо таймеров цикла событий на время пополнения токенов;
+// точность возобновления - тик колеса
+final class ThrottleTimer {
+    private ThrottleTimer() {
+    }
+
+    // Ставит таймер возобновления чтения (вызывается в потоке цикла после чтения с исчерпанием токенов)
+    static void resumeLater(TimingWheel wheel, Client client) {
+        long now = System.nanoTime();
+        wheel.schedule(new ResumeTimeout(client), now + client.getThrottleDelay(now));
+    }
+
+    private static final class ResumeTimeout extends TimingWheel.Timeout {
+        private final Client client;
+
+        ResumeTimeout(Client client) {
+            this.client = client;
+        }
+
+        @Override
+        void expire(TimingWheel wheel, long now) {
+            if (!client.isOpen())
+                return;
+            long delay = client.getThrottleDelay(now);
+            if (delay > 0)
+                wheel.schedule(this, now + delay); // токены ещё не пополнились
+            else
+                client.resumeReading();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package server;
+
+// Хешированное колесо таймеров (hashed timing wheel).
+// Время разбито на тики, таймер попадает в ячейку (номер тика срабатывания) & (размер колеса - 1).
+// Постановка и снятие таймера - O(1), за тик просматривается только одна ячейка:
+// таймеры дальних оборотов колеса в ней пропускаются по сроку.
+// Не потокобезопасно: используется только потоком своего цикла событий
+final class TimingWheel {
+    // Таймер. Один экземпляр может быть поставлен в колесо не более одного раза одновременно
+    abstract static class Timeout {
+        private long deadlineTick; // номер тика срабатывания
+        private int bucket = -1; // ячейка колеса (-1 - таймер не поставлен)
+        private Timeout prev;
+        private Timeout next;
+
+        // Признак того, что таймер поставлен в колесо
+        final boolean isScheduled() {
+            return bucket != -1;
+        }
+
+        // Вызывается при срабатывании таймера (таймер уже снят и может быть поставлен снова)
+        abstract void expire(TimingWheel wheel, long now);
+    }
+
+    private final long tickNanos; // длительность тика
+    private final Timeout[] buckets; // ячейки колеса: двусвязные списки таймеров
+    private final int mask;
+    private final long startTime; // время нулевого тика
+    private long currentTick = 0; // последний обработанный тик
+    private int size = 0; // кол-во поставленных таймеров
+
+    // tickMillis - длительность тика (точность срабатывания), wheelSize - кол-во ячеек (округляется до степени двойки)
+    TimingWheel(long tickMillis, int wheelSize) {
+        this.tickNanos = Math.max(tickMillis, 1) * 1_000_000L;
+        int capacity = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.buckets = new Timeout[capacity];
+        this.mask = capacity - 1;
+        this.startTime = System.nanoTime();
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Ставит таймер на время deadline (System.nanoTime()). Поставленный таймер переносится.
+    // Срабатывание - не раньше deadline и не позже следующего тика после него
+    void schedule(Timeout timeout, long deadline) {
+        if (timeout.isScheduled())
+            cancel(timeout);
+        long tick = (deadline - startTime + tickNanos - 1) / tickNanos;
+        timeout.deadlineTick = Math.max(tick, currentTick + 1);
+        int bucket = (int) (timeout.deadlineTick & mask);
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = buckets[bucket];
+        if (timeout.next != null)
+            timeout.next.prev = timeout;
+        buckets[bucket] = timeout;
+        size++;
+    }
+
+    // Снимает таймер
+    void cancel(Timeout timeout) {
+        if (!timeout.isScheduled())
+            return;
+        if (timeout.prev != null)
+            timeout.prev.next = timeout.next;
+        else
+            buckets[timeout.bucket] = timeout.next;
+        if (timeout.next != null)
+            timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        size--;
+    }
+
+    // Обрабатывает тики, прошедшие к моменту now. Возвращает кол-во сработавших таймеров
+    int advance(long now) {
+        long targetTick = (now - startTime) / tickNanos;
+        if (targetTick <= currentTick)
+            return 0;
+        // если отстали больше чем на оборот - достаточно просмотреть каждую ячейку один раз
+        long ticks = Math.min(targetTick - currentTick, buckets.length);
+        long fromTick = currentTick;
+        currentTick = targetTick; // таймеры, поставленные при срабатывании, попадут в следующие тики
+        int expired = 0;
+        for (long tick = fromTick + 1; tick <= fromTick + ticks; tick++) {
+            Timeout timeout = buckets[(int) (tick & mask)];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadlineTick <= targetTick) {
+                    cancel(timeout);
+                    expired++;
+                    timeout.expire(this, now);
+                }
+                timeout = next;
+            }
+        }
+        return expired;
+    }
+
+    // Время до следующего тика в мс (для таймаута select). 0 - таймеров нет, ждать можно без ограничения
+    long nextTickDelay(long now) {
+        if (size == 0)
+            return 0;
+        long nextTickTime = startTime + (currentTick + 1) * tickNanos;
+        return Math.max((nextTickTime - now + 999_999) / 1_000_000, 1);
+    }
+}